@@ -0,0 +1,133 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.actions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob;
+import org.jahia.services.scheduler.BackgroundJob;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.quartz.JobDetail;
+
+/**
+ * Measures the listing of the publication jobs of a site by {@link PublicationJobsAction}: filtering, sorting and paging a large set of
+ * jobs held in memory, as read from the scheduler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PublicationJobListingBenchmark {
+
+    private static final String[] RESULTS = {SiteAdminPublicationJob.SUCCESS, SiteAdminPublicationJob.ERROR, SiteAdminPublicationJob.NOTHING_TO_PUBLISH,
+            SiteAdminPublicationJob.PARTIAL, null};
+
+    private static final int PAGE_SIZE = 20;
+
+    @Param({"1000", "10000", "100000"})
+    private int jobCount;
+
+    private List<JobDetail> jobs;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        jobs = new ArrayList<>(jobCount);
+        long start = System.currentTimeMillis() - 30L * 24 * 3600 * 1000;
+        for (int i = 0; i < jobCount; i++) {
+            JobDetail job = new JobDetail();
+            job.setName("BackgroundJob-" + i);
+            long begin = start + random.nextInt(30 * 24 * 3600) * 1000L;
+            job.getJobDataMap().put(BackgroundJob.JOB_BEGIN, Long.toString(begin));
+            job.getJobDataMap().put(SiteAdminPublicationJob.PUBLICATION_JOB_PATH, "/sites/bench/home/section-" + random.nextInt(50) + "/page-" + random.nextInt(1000));
+            job.getJobDataMap().put(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE, random.nextBoolean() ? "en" : "fr");
+            String result = RESULTS[random.nextInt(RESULTS.length)];
+            if (result != null) {
+                job.getJobDataMap().put(BackgroundJob.JOB_END, Long.toString(begin + random.nextInt(600000)));
+                job.getJobDataMap().put(BackgroundJob.JOB_STATUS, BackgroundJob.STATUS_SUCCESSFUL);
+                job.getJobDataMap().put(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT, result);
+            } else {
+                job.getJobDataMap().put(BackgroundJob.JOB_STATUS, BackgroundJob.STATUS_ADDED);
+            }
+            jobs.add(job);
+        }
+    }
+
+    @Benchmark
+    public List<JobDetail> firstPageByDate() {
+        return list(null, null, BackgroundJob.JOB_BEGIN);
+    }
+
+    @Benchmark
+    public List<JobDetail> filteredByPathAndStatus() {
+        return list("section-7", SiteAdminPublicationJob.ERROR, BackgroundJob.JOB_END);
+    }
+
+    @Benchmark
+    public List<JobDetail> sortedByStatus() {
+        return list(null, null, "status");
+    }
+
+    private List<JobDetail> list(String pathFilter, String statusFilter, String sort) {
+        List<JobDetail> filteredJobs = PublicationJobsAction.filter(jobs, pathFilter, statusFilter);
+        Collections.sort(filteredJobs, Collections.reverseOrder(PublicationJobsAction.getComparator(sort)));
+        return PublicationJobsAction.getPage(filteredJobs, 0, PAGE_SIZE);
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import javax.script.ScriptException;
+
+import org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob;
+import org.jahia.modules.sitesettings.publication.service.PublicationNotificationRenderer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the rendering of the notification emails by the {@link PublicationNotificationRenderer}, with the module's own templates, for a
+ * single job and for the digest of the jobs of a publication request. The reported nodes are the sample kept in the job data.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NotificationRenderingBenchmark {
+
+    private static final String NOTIFICATION_TEMPLATE = "META-INF/mail/notification.vm";
+
+    private static final String DIGEST_TEMPLATE = "META-INF/mail/digest.vm";
+
+    @Param({"0", "100"})
+    private int reportedNodes;
+
+    @Param({"2", "10"})
+    private int digestJobs;
+
+    private PublicationNotificationRenderer renderer;
+
+    private Map<String, Object> notificationBindings;
+
+    private Map<String, Object> digestBindings;
+
+    @Setup
+    public void setUp() {
+        renderer = new PublicationNotificationRenderer();
+        notificationBindings = getJobBindings(0);
+        List<Map<String, Object>> jobs = new ArrayList<>(digestJobs);
+        for (int i = 0; i < digestJobs; i++) {
+            jobs.add(getJobBindings(i));
+        }
+        digestBindings = new HashMap<>();
+        digestBindings.put("jobs", jobs);
+    }
+
+    @TearDown
+    public void tearDown() {
+        renderer.clear();
+    }
+
+    @Benchmark
+    public String notification() throws ScriptException {
+        return renderer.render(NOTIFICATION_TEMPLATE, Locale.ENGLISH, notificationBindings);
+    }
+
+    @Benchmark
+    public String digest() throws ScriptException {
+        return renderer.render(DIGEST_TEMPLATE, Locale.FRENCH, digestBindings);
+    }
+
+    private Map<String, Object> getJobBindings(int index) {
+        List<String> conflicts = new ArrayList<>(reportedNodes);
+        for (int i = 0; i < reportedNodes; i++) {
+            conflicts.add("/sites/bench/home/page-" + index + "/content-" + i);
+        }
+        long now = System.currentTimeMillis();
+        Map<String, Object> bindings = new HashMap<>();
+        bindings.put("path", "/sites/bench/home/page-" + index);
+        bindings.put("language", "en");
+        bindings.put("result", reportedNodes > 0 ? SiteAdminPublicationJob.ERROR : SiteAdminPublicationJob.SUCCESS);
+        bindings.put("beginDate", renderer.formatDate(Long.toString(now)));
+        bindings.put("endDate", renderer.formatDate(Long.toString(now + 60000)));
+        bindings.put("conflict", conflicts);
+        bindings.put("conflictSize", reportedNodes * 10);
+        bindings.put("conflictOthers", reportedNodes * 9);
+        bindings.put("missingProperty", new ArrayList<String>());
+        bindings.put("missingPropertySize", 0);
+        bindings.put("missingPropertyOthers", 0);
+        return bindings;
+    }
+}
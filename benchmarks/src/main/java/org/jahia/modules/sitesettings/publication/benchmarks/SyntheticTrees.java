@@ -0,0 +1,143 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jahia.services.content.PublicationInfo;
+import org.jahia.services.content.PublicationInfoNode;
+
+/**
+ * Builds synthetic publication info trees, as returned for the publication of a site, so that their analysis can be measured without a
+ * repository.
+ *
+ * Each node has fanOut children down to the given depth. A share of the nodes reference one of a pool of shared trees, e.g. images used
+ * from many pages, and a share of them conflict with live nodes. A small share of the other nodes are modified, the rest being published.
+ * The trees only depend on their parameters, the random choices being seeded.
+ */
+public final class SyntheticTrees {
+
+    private static final long SEED = 42;
+
+    private static final double MODIFIED_DENSITY = 0.05;
+
+    private static final int SHARED_TREE_SIZE = 3;
+
+    private SyntheticTrees() {
+    }
+
+    /**
+     * @param depth the number of levels below the root
+     * @param fanOut the number of children of each node above the last level
+     * @param sharing the share of the nodes referencing a shared tree, from 0 to 1
+     * @param conflictDensity the share of the nodes conflicting with live nodes, from 0 to 1
+     * @return the publication info of the root of the tree
+     */
+    public static List<PublicationInfo> build(int depth, int fanOut, double sharing, double conflictDensity) {
+        Random random = new Random(SEED);
+        int nodeCount = getNodeCount(depth, fanOut);
+        // about one shared tree per hundred nodes, each one referenced from several places
+        List<PublicationInfo> sharedTrees = new ArrayList<>();
+        for (int i = 0; i < Math.max(1, nodeCount / 100); i++) {
+            PublicationInfoNode sharedRoot = node("shared-" + i, "/sites/bench/files/shared-" + i, random, 0);
+            for (int j = 0; j < SHARED_TREE_SIZE; j++) {
+                sharedRoot.addChild(node("shared-" + i + "-" + j, sharedRoot.getPath() + "/" + j, random, 0));
+            }
+            sharedTrees.add(tree(sharedRoot));
+        }
+
+        PublicationInfoNode root = node("root", "/sites/bench", random, 0);
+        List<PublicationInfoNode> level = Collections.singletonList(root);
+        for (int d = 0; d < depth; d++) {
+            List<PublicationInfoNode> nextLevel = new ArrayList<>(level.size() * fanOut);
+            for (PublicationInfoNode parent : level) {
+                for (int i = 0; i < fanOut; i++) {
+                    PublicationInfoNode child = node(parent.getUuid() + "-" + i, parent.getPath() + "/n" + i, random, conflictDensity);
+                    if (random.nextDouble() < sharing) {
+                        child.addReference(sharedTrees.get(random.nextInt(sharedTrees.size())));
+                    }
+                    parent.addChild(child);
+                    nextLevel.add(child);
+                }
+            }
+            level = nextLevel;
+        }
+        return Collections.singletonList(tree(root));
+    }
+
+    /**
+     * @return the number of nodes of a tree of the given depth and fan-out, not counting the shared trees
+     */
+    public static int getNodeCount(int depth, int fanOut) {
+        int count = 1;
+        int levelCount = 1;
+        for (int d = 0; d < depth; d++) {
+            levelCount *= fanOut;
+            count += levelCount;
+        }
+        return count;
+    }
+
+    private static PublicationInfoNode node(String uuid, String path, Random random, double conflictDensity) {
+        PublicationInfoNode node = new PublicationInfoNode(uuid, path);
+        double draw = random.nextDouble();
+        if (draw < conflictDensity) {
+            node.setStatus(PublicationInfo.CONFLICT);
+        } else if (draw < conflictDensity + MODIFIED_DENSITY) {
+            node.setStatus(PublicationInfo.MODIFIED);
+        } else {
+            node.setStatus(PublicationInfo.PUBLISHED);
+        }
+        return node;
+    }
+
+    private static PublicationInfo tree(PublicationInfoNode root) {
+        PublicationInfo publicationInfo = new PublicationInfo();
+        publicationInfo.setRoot(root);
+        return publicationInfo;
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of the permission decisions of the {@link SettingsComponentPermissionFilter}, by user and node.
+ * <p>
+ * Decisions are dropped all at once whenever an ACL, a group membership or a role changes, which is signalled by
+ * {@link #invalidateAll()}, and individually once older than their time to live, which bounds their staleness
+ * should a change not be signalled on this server. The least recently used decision is evicted when the cache is full.
+ */
+public class PermissionDecisionCache {
+
+    /** Incremented on each permission related change, decisions taken before it being ignored. */
+    private static final AtomicLong GENERATION = new AtomicLong();
+
+    private static class Decision {
+
+        private final boolean granted;
+        private final long generation;
+        private final long expiry;
+
+        private Decision(boolean granted, long generation, long expiry) {
+            this.granted = granted;
+            this.generation = generation;
+            this.expiry = expiry;
+        }
+    }
+
+    private final Map<String, Decision> decisions;
+
+    private final long timeToLive;
+
+    /**
+     * @param maxEntries the maximum number of decisions kept
+     * @param timeToLive the maximum age of a decision in milliseconds
+     */
+    public PermissionDecisionCache(final int maxEntries, long timeToLive) {
+        this.timeToLive = timeToLive;
+        this.decisions = new LinkedHashMap<String, Decision>(16, 0.75f, true) {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Decision> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Invalidates the decisions of all the caches, to be called when an ACL, a group membership or a role changes.
+     */
+    public static void invalidateAll() {
+        GENERATION.incrementAndGet();
+    }
+
+    /**
+     * @return the current generation, to be read before evaluating a decision and passed to {@link #put(String, boolean, long)}
+     */
+    public long getGeneration() {
+        return GENERATION.get();
+    }
+
+    /**
+     * @param key the user and node the decision applies to
+     * @return the cached decision, or null if there is no valid one
+     */
+    public synchronized Boolean get(String key) {
+        Decision decision = decisions.get(key);
+        if (decision == null) {
+            return null;
+        }
+        if (decision.generation != GENERATION.get() || decision.expiry < System.currentTimeMillis()) {
+            decisions.remove(key);
+            return null;
+        }
+        return decision.granted;
+    }
+
+    /**
+     * Caches a decision, unless the permissions changed while it was evaluated.
+     *
+     * @param key the user and node the decision applies to
+     * @param granted the decision
+     * @param generation the generation read before evaluating the decision
+     */
+    public synchronized void put(String key, boolean granted, long generation) {
+        if (generation == GENERATION.get()) {
+            decisions.put(key, new Decision(granted, generation, System.currentTimeMillis() + timeToLive));
+        }
+    }
+}
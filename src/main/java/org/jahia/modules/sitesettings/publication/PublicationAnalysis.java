@@ -0,0 +1,238 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication;
+
+import org.jahia.services.content.PublicationInfo;
+import org.jahia.services.content.PublicationInfoNode;
+
+import java.util.*;
+
+/**
+ * Single pass analysis of publication info trees, used by the {@link SiteAdminPublicationJob} to decide whether there is something to
+ * publish and whether some nodes prevent the publication.
+ *
+ * The trees are walked iteratively (no recursion, so deep trees cannot overflow the stack) and every node UUID is visited only once, even
+ * when the same content is referenced from many places. The publication trees are walked first and referenced trees afterwards, so that a
+ * node reachable both ways is analysed with its complete sub-tree.
+ *
+ * The UUIDs of the nodes needing publication are collected in the walk order, parents before their children, so that they can be published
+ * in several consecutive batches.
+ *
+ * A large tree can be analysed in several parts, one sub-tree at a time: a root already visited by a previous call, e.g. as a non content
+ * sub-node of its parent, still gets its sub-nodes walked. So does a node visited by a previous call as part of a referenced tree only,
+ * whose sub-pages are not in that tree, when it comes back in a publication tree. The non publishable nodes are kept as detached copies holding their path and
+ * status only, so that the analysis does not retain the publication info trees once they have been walked.
+ *
+ * An analysis created in early-exit mode stops as soon as a node needing publication is found: it can only answer the yes/no question and
+ * must not be used to collect non publishable nodes.
+ */
+public class PublicationAnalysis {
+
+    private final boolean stopOnFirstUnpublished;
+
+    private final Set<String> visitedUuids = new HashSet<>();
+
+    private final Set<String> referenceOnlyUuids = new HashSet<>();
+
+    private final List<PublicationInfoNode> nonPublishableNodes = new LinkedList<>();
+
+    private final List<String> publishableUuids = new ArrayList<>();
+
+    private final List<String> publishablePaths = new ArrayList<>();
+
+    private boolean publicationNeeded;
+
+    private int analysedCount;
+
+    /**
+     * Creates a complete analysis, collecting all the non publishable nodes.
+     */
+    public PublicationAnalysis() {
+        this(false);
+    }
+
+    /**
+     * @param stopOnFirstUnpublished whether to stop the walk as soon as a node needing publication is found
+     */
+    public PublicationAnalysis(boolean stopOnFirstUnpublished) {
+        this.stopOnFirstUnpublished = stopOnFirstUnpublished;
+    }
+
+    /**
+     * Tells whether at least one node of the given publication info trees needs to be published, stopping at the first one found.
+     *
+     * @param publicationInfos the publication info trees to check
+     * @return true if something needs to be published
+     */
+    public static boolean needsPublication(Collection<PublicationInfo> publicationInfos) {
+        return new PublicationAnalysis(true).analyse(publicationInfos).isPublicationNeeded();
+    }
+
+    /**
+     * Walks the given publication info trees and their references. Can be called several times on the same analysis: nodes already visited
+     * by a previous call are not analysed again, only the sub-nodes of such a root, or of a node only visited in referenced trees so far,
+     * being walked.
+     *
+     * @param publicationInfos the publication info trees to analyse
+     * @return this analysis
+     */
+    public PublicationAnalysis analyse(Collection<PublicationInfo> publicationInfos) {
+
+        Deque<PublicationInfoNode> nodes = new ArrayDeque<>();
+        Deque<PublicationInfoNode> referenceNodes = new ArrayDeque<>();
+        Deque<PublicationInfoNode> references = new ArrayDeque<>();
+        for (PublicationInfo publicationInfo : publicationInfos) {
+            PublicationInfoNode root = publicationInfo.getRoot();
+            if (root.getUuid() != null && visitedUuids.contains(root.getUuid())) {
+                referenceOnlyUuids.remove(root.getUuid());
+                nodes.addAll(root.getChildren());
+            } else {
+                nodes.addLast(root);
+            }
+        }
+
+        while (!nodes.isEmpty() || !referenceNodes.isEmpty() || !references.isEmpty()) {
+            // the publication trees are walked first, then each referenced tree in turn
+            boolean inReference = nodes.isEmpty();
+            PublicationInfoNode node;
+            if (!inReference) {
+                node = nodes.pop();
+            } else if (!referenceNodes.isEmpty()) {
+                node = referenceNodes.pop();
+            } else {
+                node = references.pollFirst();
+            }
+            Deque<PublicationInfoNode> children = inReference ? referenceNodes : nodes;
+            if (node.getUuid() != null && !visitedUuids.add(node.getUuid())) {
+                if (!inReference && referenceOnlyUuids.remove(node.getUuid())) {
+                    // only its referenced tree was walked so far, which lacks its independently published sub-nodes
+                    pushChildren(node, children);
+                }
+                continue;
+            }
+            if (inReference && node.getUuid() != null) {
+                referenceOnlyUuids.add(node.getUuid());
+            }
+            analysedCount++;
+
+            int status = node.getStatus();
+            if (status != PublicationInfo.PUBLISHED) {
+                publicationNeeded = true;
+                if (node.getUuid() != null) {
+                    publishableUuids.add(node.getUuid());
+                    publishablePaths.add(node.getPath());
+                }
+                if (stopOnFirstUnpublished) {
+                    return this;
+                }
+            }
+            if (status == PublicationInfo.CONFLICT || status == PublicationInfo.MANDATORY_LANGUAGE_UNPUBLISHABLE) {
+                PublicationInfoNode nonPublishableNode = new PublicationInfoNode(node.getUuid(), node.getPath());
+                nonPublishableNode.setStatus(status);
+                nonPublishableNodes.add(nonPublishableNode);
+            }
+
+            pushChildren(node, children);
+            for (PublicationInfo reference : node.getReferences()) {
+                references.addLast(reference.getRoot());
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Pushes the children of a node in reverse order, so that they are visited in document order.
+     */
+    private static void pushChildren(PublicationInfoNode node, Deque<PublicationInfoNode> nodes) {
+        List<PublicationInfoNode> children = node.getChildren();
+        for (ListIterator<PublicationInfoNode> it = children.listIterator(children.size()); it.hasPrevious(); ) {
+            nodes.push(it.previous());
+        }
+    }
+
+    /**
+     * @param uuid a node UUID
+     * @return true if the node has already been analysed
+     */
+    public boolean isVisited(String uuid) {
+        return visitedUuids.contains(uuid);
+    }
+
+    /**
+     * @return true if at least one analysed node needs to be published
+     */
+    public boolean isPublicationNeeded() {
+        return publicationNeeded;
+    }
+
+    /**
+     * @return the nodes preventing the publication, either conflicting with live nodes or missing mandatory properties, with their path and
+     *         status only
+     */
+    public List<PublicationInfoNode> getNonPublishableNodes() {
+        return nonPublishableNodes;
+    }
+
+    /**
+     * @return the UUIDs of the nodes needing publication, parents before their children
+     */
+    public List<String> getPublishableUuids() {
+        return publishableUuids;
+    }
+
+    /**
+     * @return the paths of the nodes needing publication, in the same order as {@link #getPublishableUuids()}
+     */
+    public List<String> getPublishablePaths() {
+        return publishablePaths;
+    }
+
+    /**
+     * @return the number of distinct nodes analysed so far
+     */
+    public int getAnalysedCount() {
+        return analysedCount;
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication;
+
+/**
+ * Module wide settings of the site admin publication jobs, configured through the module Spring context.
+ */
+public class PublicationJobSettings {
+
+    private boolean multiLanguageJob;
+
+    private int batchSize;
+
+    private int threads = 1;
+
+    private int deltaMaxNodes;
+
+    private long maxDuration;
+
+    private String offPeakCron;
+
+    private int maxNodesPerSecond;
+
+    private long latencyThreshold;
+
+    private int largeJobNodes;
+
+    private int analysisMaxNodes;
+
+    /**
+     * @return true if a single {@link SiteAdminPublicationJob} should publish all the selected languages together, instead of one job per
+     *         language
+     */
+    public boolean isMultiLanguageJob() {
+        return multiLanguageJob;
+    }
+
+    /**
+     * @param multiLanguageJob whether a single job should publish all the selected languages together
+     */
+    public void setMultiLanguageJob(boolean multiLanguageJob) {
+        this.multiLanguageJob = multiLanguageJob;
+    }
+
+    /**
+     * @return the maximum number of nodes published in a single transaction, 0 to publish everything in one transaction
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize the maximum number of nodes published in a single transaction, 0 to publish everything in one transaction
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return the default maximum number of sub-trees published in parallel by a job, the sites being able to override it
+     */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * @param threads the default maximum number of sub-trees published in parallel by a job
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    /**
+     * @return the maximum number of modified nodes an incremental entire site publication analyses one by one before falling back to the
+     *         analysis of the whole site, 0 to disable incremental publications
+     */
+    public int getDeltaMaxNodes() {
+        return deltaMaxNodes;
+    }
+
+    /**
+     * @param deltaMaxNodes the maximum number of modified nodes an incremental entire site publication analyses one by one, 0 to disable
+     *            incremental publications
+     */
+    public void setDeltaMaxNodes(int deltaMaxNodes) {
+        this.deltaMaxNodes = deltaMaxNodes;
+    }
+
+    /**
+     * @return the maximum duration of a job in milliseconds, after which it stops at its next checkpoint, 0 for no limit
+     */
+    public long getMaxDuration() {
+        return maxDuration;
+    }
+
+    /**
+     * @param maxDuration the maximum duration of a job in milliseconds, 0 for no limit
+     */
+    public void setMaxDuration(long maxDuration) {
+        this.maxDuration = maxDuration;
+    }
+
+    /**
+     * @return the default Quartz cron expression of the start of the off-peak publication windows, the sites being able to override it,
+     *         empty if there is none
+     */
+    public String getOffPeakCron() {
+        return offPeakCron;
+    }
+
+    /**
+     * @param offPeakCron the default Quartz cron expression of the start of the off-peak publication windows
+     */
+    public void setOffPeakCron(String offPeakCron) {
+        this.offPeakCron = offPeakCron;
+    }
+
+    /**
+     * @return the default maximum number of nodes published per second by a throttled job, the sites being able to override it, 0 to
+     *         publish without throttling
+     */
+    public int getMaxNodesPerSecond() {
+        return maxNodesPerSecond;
+    }
+
+    /**
+     * @param maxNodesPerSecond the default maximum number of nodes published per second by a throttled job, 0 to publish without throttling
+     */
+    public void setMaxNodesPerSecond(int maxNodesPerSecond) {
+        this.maxNodesPerSecond = maxNodesPerSecond;
+    }
+
+    /**
+     * @return the default commit latency in milliseconds above which a throttled job slows down, the sites being able to override it, 0
+     *         for a fixed rate
+     */
+    public long getLatencyThreshold() {
+        return latencyThreshold;
+    }
+
+    /**
+     * @param latencyThreshold the default commit latency in milliseconds above which a throttled job slows down, 0 for a fixed rate
+     */
+    public void setLatencyThreshold(long latencyThreshold) {
+        this.latencyThreshold = latencyThreshold;
+    }
+
+    /**
+     * @return the number of nodes above which a sub-tree publication goes to the lane of the large jobs, entire site publications always
+     *         being large, 0 to only consider entire site publications as large
+     */
+    public int getLargeJobNodes() {
+        return largeJobNodes;
+    }
+
+    /**
+     * @param largeJobNodes the number of nodes above which a sub-tree publication goes to the lane of the large jobs, 0 to only consider
+     *            entire site publications as large
+     */
+    public void setLargeJobNodes(int largeJobNodes) {
+        this.largeJobNodes = largeJobNodes;
+    }
+
+    /**
+     * @return the maximum number of nodes of a tree a job analyses at once, larger trees being analysed one sub-tree at a time to bound the
+     *         memory used by their publication info, 0 to always analyse whole trees
+     */
+    public int getAnalysisMaxNodes() {
+        return analysisMaxNodes;
+    }
+
+    /**
+     * @param analysisMaxNodes the maximum number of nodes of a tree a job analyses at once, 0 to always analyse whole trees
+     */
+    public void setAnalysisMaxNodes(int analysisMaxNodes) {
+        this.analysisMaxNodes = analysisMaxNodes;
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.api.Constants;
+import org.jahia.modules.sitesettings.publication.service.PublicationProgress;
+import org.jahia.services.content.*;
+import org.jahia.services.usermanager.JahiaUser;
+import org.quartz.JobDataMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.jcr.RepositoryException;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Publishes the nodes collected by a {@link PublicationAnalysis} on behalf of the {@link SiteAdminPublicationJob}.
+ *
+ * Nodes are published in consecutive batches, each one committed on its own, the number of committed batches being recorded in the job
+ * data. In parallel mode, the sub-trees of the publication root are published concurrently on a bounded pool, each worker with its own
+ * session: the root itself, its system children (translations, ACL...) and the referenced nodes living outside of the root are published
+ * first, then each sub-tree gets the nodes under its path, so that a node shared by several sub-trees is only published once.
+ *
+ * The job progress is checked before each batch, so that a cancelled job stops between two batches. In throttled mode, batches are delayed
+ * so that the publication rate allowed by the {@link PublicationThrottle} is not exceeded, their commit latency adapting that rate.
+ */
+class PublicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublicationRunner.class);
+
+    private final JCRPublicationService publicationService;
+
+    private final int batchSize;
+
+    private final JobDataMap jobDataMap;
+
+    private final PublicationProgress progress;
+
+    private final PublicationThrottle throttle;
+
+    private final AtomicInteger batchesDone = new AtomicInteger();
+
+    /**
+     * @param publicationService the publication service
+     * @param batchSize the maximum number of nodes to publish in a single transaction, 0 or less for no limit
+     * @param jobDataMap the data of the running job, where the checkpoint is recorded
+     * @param progress the progress of the running job, where the number of published nodes is counted
+     * @param throttle the throttle limiting the publication rate, null for no limit
+     */
+    PublicationRunner(JCRPublicationService publicationService, int batchSize, JobDataMap jobDataMap, PublicationProgress progress, PublicationThrottle throttle) {
+        this.publicationService = publicationService;
+        this.batchSize = batchSize;
+        this.jobDataMap = jobDataMap;
+        this.progress = progress;
+        this.throttle = throttle;
+    }
+
+    /**
+     * Publishes the given nodes sequentially, in the current thread.
+     *
+     * @param uuids the UUIDs of the nodes to publish, parents before their children
+     */
+    void publish(List<String> uuids) throws RepositoryException {
+        setBatches(getBatchCount(uuids.size()));
+        progress.startPublishing(uuids.size());
+        publishInBatches(uuids, null);
+    }
+
+    /**
+     * Publishes the nodes of the given analysis, the sub-trees of the publication root being published in parallel.
+     *
+     * @param rootPath the path of the publication root
+     * @param analysis the analysis of the publication root
+     * @param threads the maximum number of sub-trees published at the same time
+     * @param user the user the job runs as, the workers publishing on its behalf
+     */
+    void publishInParallel(String rootPath, PublicationAnalysis analysis, int threads, final JahiaUser user) throws RepositoryException {
+
+        // split the nodes by sub-tree, keeping the analysis order inside each one
+        final List<String> headUuids = new ArrayList<>();
+        Map<String, List<String>> subtreeUuids = new LinkedHashMap<>();
+        List<String> uuids = analysis.getPublishableUuids();
+        List<String> paths = analysis.getPublishablePaths();
+        for (int i = 0; i < uuids.size(); i++) {
+            String subtreeName = paths.get(i).startsWith(rootPath + "/") ? StringUtils.substringBefore(paths.get(i).substring(rootPath.length() + 1), "/") : null;
+            if (subtreeName == null || subtreeName.startsWith("j:")) {
+                headUuids.add(uuids.get(i));
+            } else {
+                List<String> subtree = subtreeUuids.get(subtreeName);
+                if (subtree == null) {
+                    subtree = new ArrayList<>();
+                    subtreeUuids.put(subtreeName, subtree);
+                }
+                subtree.add(uuids.get(i));
+            }
+        }
+
+        int batches = getBatchCount(headUuids.size());
+        for (List<String> subtree : subtreeUuids.values()) {
+            batches += getBatchCount(subtree.size());
+        }
+        setBatches(batches);
+        progress.startPublishing(uuids.size());
+
+        // the root and the shared nodes have to be live before the sub-trees
+        publishInBatches(headUuids, null);
+        if (subtreeUuids.isEmpty()) {
+            return;
+        }
+
+        logger.info("Publishing {} sub-trees of {} using {} threads", subtreeUuids.size(), rootPath, Math.min(threads, subtreeUuids.size()));
+        final AtomicBoolean failed = new AtomicBoolean();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, subtreeUuids.size()));
+        try {
+            List<Future<Object>> futures = new LinkedList<>();
+            for (final List<String> subtree : subtreeUuids.values()) {
+                futures.add(executor.submit(new Callable<Object>() {
+
+                    @Override
+                    public Object call() throws Exception {
+                        JCRSessionFactory sessionFactory = JCRSessionFactory.getInstance();
+                        sessionFactory.setCurrentUser(user);
+                        try {
+                            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(user, Constants.EDIT_WORKSPACE, null, new JCRCallback<Object>() {
+
+                                @Override
+                                public Object doInJCR(JCRSessionWrapper session) throws RepositoryException {
+                                    publishInBatches(subtree, failed);
+                                    return null;
+                                }
+                            });
+                        } catch (RepositoryException | RuntimeException e) {
+                            failed.set(true);
+                            throw e;
+                        } finally {
+                            sessionFactory.setCurrentUser(null);
+                            sessionFactory.closeAllSessions();
+                        }
+                    }
+                }));
+            }
+
+            Exception failure = null;
+            for (Future<Object> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            if (failure instanceof RepositoryException) {
+                throw (RepositoryException) failure;
+            } else if (failure != null) {
+                throw new RepositoryException("Error publishing the sub-trees of " + rootPath, failure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while publishing the sub-trees of " + rootPath, e);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private void publishInBatches(List<String> uuids, AtomicBoolean failed) throws RepositoryException {
+        int step = batchSize > 0 ? batchSize : Math.max(1, uuids.size());
+        for (int start = 0; start < uuids.size(); start += step) {
+            if (failed != null && failed.get()) {
+                // another worker failed, do not start any new batch
+                return;
+            }
+            progress.checkCancelled();
+            List<String> batchUuids = new ArrayList<>(uuids.subList(start, Math.min(uuids.size(), start + step)));
+            if (throttle != null) {
+                waitForSlot(throttle.reserve(batchUuids.size()));
+            }
+            long commitStart = System.currentTimeMillis();
+            publicationService.publish(batchUuids, Constants.EDIT_WORKSPACE, Constants.LIVE_WORKSPACE, Collections.<String>emptyList());
+            if (throttle != null) {
+                throttle.committed(System.currentTimeMillis() - commitStart);
+            }
+            progress.addPublished(batchUuids.size());
+            int done = batchesDone.incrementAndGet();
+            synchronized (jobDataMap) {
+                jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_BATCHES_DONE, Integer.toString(done));
+            }
+            logger.debug("Committed publication batch {} of {} nodes", done, batchUuids.size());
+        }
+    }
+
+    private void waitForSlot(long wait) throws RepositoryException {
+        long end = System.currentTimeMillis() + wait;
+        try {
+            for (long remaining = wait; remaining > 0; remaining = end - System.currentTimeMillis()) {
+                // a throttled job can be waiting long, keep on checking for its cancellation
+                progress.checkCancelled();
+                Thread.sleep(Math.min(remaining, 1000));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException("Interrupted while waiting for the next publication batch", e);
+        }
+    }
+
+    private int getBatchCount(int nodes) {
+        if (batchSize <= 0) {
+            return nodes > 0 ? 1 : 0;
+        }
+        return (nodes + batchSize - 1) / batchSize;
+    }
+
+    private void setBatches(int batches) {
+        synchronized (jobDataMap) {
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_BATCHES, Integer.toString(batches));
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_BATCHES_DONE, "0");
+        }
+    }
+}
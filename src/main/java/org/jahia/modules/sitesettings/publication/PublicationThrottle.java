@@ -0,0 +1,114 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of nodes per second a {@link PublicationRunner} publishes, adapting the rate to the observed commit latency.
+ *
+ * The rate starts at the configured maximum. Whenever a batch takes longer than the latency threshold to commit, which means the live
+ * workspace or the cluster replication is struggling, the rate is halved, down to one node per second; each batch committed within the
+ * threshold raises it again by a tenth of the maximum. Batches are spaced according to the current rate, the parallel workers of a job
+ * sharing the same throttle.
+ */
+class PublicationThrottle {
+
+    private static final Logger logger = LoggerFactory.getLogger(PublicationThrottle.class);
+
+    private static final double MIN_RATE = 1;
+
+    private final int maxRate;
+
+    private final long latencyThreshold;
+
+    private double rate;
+
+    private long nextSlot;
+
+    /**
+     * @param maxRate the maximum number of nodes published per second
+     * @param latencyThreshold the commit latency in milliseconds above which the rate is reduced, 0 or less for a fixed rate
+     */
+    PublicationThrottle(int maxRate, long latencyThreshold) {
+        this.maxRate = maxRate;
+        this.latencyThreshold = latencyThreshold;
+        this.rate = maxRate;
+    }
+
+    /**
+     * Reserves the slot of the next batch.
+     *
+     * @param nodes the number of nodes of the batch
+     * @return the time to wait in milliseconds before publishing the batch
+     */
+    synchronized long reserve(int nodes) {
+        long now = System.currentTimeMillis();
+        long start = Math.max(now, nextSlot);
+        nextSlot = start + (long) (nodes * 1000 / rate);
+        return start - now;
+    }
+
+    /**
+     * @return the current number of nodes published per second
+     */
+    synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Adapts the rate to the latency of a committed batch.
+     *
+     * @param latency the time the batch took to commit, in milliseconds
+     */
+    synchronized void committed(long latency) {
+        if (latencyThreshold > 0 && latency > latencyThreshold) {
+            rate = Math.max(MIN_RATE, rate / 2);
+            logger.debug("Commit took {} ms, publication rate reduced to {} nodes/s", latency, rate);
+        } else if (rate < maxRate) {
+            rate = Math.min(maxRate, rate + maxRate / 10.0);
+        }
+    }
+}
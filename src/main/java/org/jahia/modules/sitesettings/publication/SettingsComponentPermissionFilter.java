@@ -47,6 +47,8 @@ import org.slf4j.LoggerFactory;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Renders a settings component only when the caller holds an administration permission on the resource the
@@ -73,7 +75,12 @@ import java.util.List;
  * route, so this filter is an additional condition and never a replacement. Failing to resolve a main resource
  * yields an empty fragment rather than a rendered component.
  * <p>
- * Registered via OSGi Declarative Services — no Spring context involvement.
+ * Decisions are cached per user and main resource node in a bounded {@link PermissionDecisionCache}, invalidated on
+ * ACL, group membership and role changes, so that panels refreshing often do not evaluate the permissions on each
+ * render. Denials are logged at most once a minute, with the number of denials not logged in between.
+ * <p>
+ * Registered via OSGi Declarative Services — no Spring context involvement, except for the
+ * {@code PermissionDecisionCacheListener} bean invalidating the cached decisions.
  */
 @Component(service = RenderFilter.class, immediate = true)
 public class SettingsComponentPermissionFilter extends AbstractFilter {
@@ -89,6 +96,19 @@ public class SettingsComponentPermissionFilter extends AbstractFilter {
 
     private static final String REQUIRED_PERMISSIONS_LABEL = StringUtils.join(REQUIRED_PERMISSIONS, ", ");
 
+    /** Bounds of the permission decision cache. */
+    private static final int MAX_DECISIONS = 1000;
+    private static final long DECISION_TIME_TO_LIVE = TimeUnit.MINUTES.toMillis(5);
+
+    /** Minimum interval between two logged denials, in milliseconds. */
+    private static final long DENIAL_LOG_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+
+    private final PermissionDecisionCache decisions = new PermissionDecisionCache(MAX_DECISIONS, DECISION_TIME_TO_LIVE);
+
+    private final AtomicLong lastDenialLog = new AtomicLong();
+
+    private final AtomicLong unloggedDenials = new AtomicLong();
+
     @Activate
     public void activate() {
         // Priority 21.5: immediately after core's own permission check (TemplatePermissionCheckFilter, 21) and
@@ -116,17 +136,40 @@ public class SettingsComponentPermissionFilter extends AbstractFilter {
             return StringUtils.EMPTY;
         }
 
+        String key = (renderContext.getUser() != null ? renderContext.getUser().getUserKey() : "") + '|'
+                + contextNode.getSession().getWorkspace().getName() + '|' + contextNode.getIdentifier();
+        Boolean granted = decisions.get(key);
+        if (granted == null) {
+            long generation = decisions.getGeneration();
+            granted = hasRequiredPermission(contextNode);
+            decisions.put(key, granted, generation);
+        }
+        if (granted) {
+            return null;
+        }
+
+        logDenial(renderContext, resource, contextNode);
+        return StringUtils.EMPTY;
+    }
+
+    private static boolean hasRequiredPermission(JCRNodeWrapper contextNode) {
         for (String permission : REQUIRED_PERMISSIONS) {
             if (contextNode.hasPermission(permission)) {
-                return null;
+                return true;
             }
         }
+        return false;
+    }
 
-        if (logger.isWarnEnabled()) {
-            logger.warn("Not rendering {}: {} holds none of {} on {}", resource.getNodePath(),
-                    renderContext.getUser() != null ? renderContext.getUser().getName() : "the current user",
-                    REQUIRED_PERMISSIONS_LABEL, contextNode.getPath());
+    private void logDenial(RenderContext renderContext, Resource resource, JCRNodeWrapper contextNode) {
+        long now = System.currentTimeMillis();
+        long last = lastDenialLog.get();
+        if (!logger.isWarnEnabled() || now - last < DENIAL_LOG_INTERVAL || !lastDenialLog.compareAndSet(last, now)) {
+            unloggedDenials.incrementAndGet();
+            return;
         }
-        return StringUtils.EMPTY;
+        logger.warn("Not rendering {}: {} holds none of {} on {} ({} other denials not logged since the previous one)",
+                resource.getNodePath(), renderContext.getUser() != null ? renderContext.getUser().getName() : "the current user",
+                REQUIRED_PERMISSIONS_LABEL, contextNode.getPath(), unloggedDenials.getAndSet(0));
     }
 }
@@ -44,26 +44,52 @@
 package org.jahia.modules.sitesettings.publication;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.jackrabbit.util.ISO8601;
 import org.jahia.api.Constants;
+import org.jahia.modules.sitesettings.publication.service.PublicationInfoCache;
+import org.jahia.modules.sitesettings.publication.service.PublicationMetrics;
+import org.jahia.modules.sitesettings.publication.service.PublicationProgress;
+import org.jahia.modules.sitesettings.publication.service.PublicationProgressRegistry;
+import org.jahia.modules.sitesettings.publication.service.PublicationReportStore;
 import org.jahia.modules.sitesettings.publication.service.PublicationResultEmailNotificationService;
+import org.jahia.modules.sitesettings.publication.service.PublicationWatermarkService;
 import org.jahia.services.SpringContextSingleton;
 import org.jahia.services.content.*;
 import org.jahia.services.scheduler.BackgroundJob;
+import org.jahia.services.usermanager.JahiaUser;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
 import org.quartz.JobExecutionContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
 
+import java.io.IOException;
 import java.util.*;
 
 /**
  * This job is used by Publication site settings to execute a publication of a given node identified by its path, in a given language.
  * In case some nodes are conflicting with live nodes or some mandatory properties are missing, the job will be aborted before starting to publish anything.
  *
- * This job needs two mandatory parameters "path" and "language".
+ * This job needs two mandatory parameters "path" and "language". When the "languages" parameter is provided instead, the publication info
+ * is computed once for the whole set of languages and all of them are published together, the result of each language being reported
+ * under the "languageResults" key.
+ *
+ * When the "batchSize" parameter is provided, the nodes are published in consecutive batches of that size, each one committed on its own,
+ * instead of a single transaction over the whole tree. The number of committed batches is kept as a checkpoint: as committed nodes are
+ * published in live, a new run for the same path only publishes what was left by the failed one.
+ *
+ * When the "delta" parameter is provided for an entire site publication, only the nodes modified since the last successful entire site
+ * publication in the same languages are analysed and published, unless more nodes than the parameter value changed or nodes were removed,
+ * moved or had their permissions changed since, which the modification dates do not show.
+ *
+ * When the "threads" parameter is greater than 1, the sub-trees of the publication root are published in parallel by that many workers.
+ *
+ * When the "paths" parameter is provided instead of "path", the trees of all the given nodes are analysed and published together by a
+ * single job, which is what coalesced publication requests end up with. The "path" parameter then only holds their comma separated list.
  *
  * This job assumes that some basics checks have been done early:
  * - the path corresponds to an existing node
@@ -83,6 +109,12 @@ public class SiteAdminPublicationJob extends BackgroundJob {
      */
     public static final String ERROR = "error";
 
+    /**
+     * Job execution result: the job published some of its languages only, the other ones being blocked by conflicts or missing mandatory
+     * properties of their translations. The result of each language is in the {@link #PUBLICATION_JOB_LANGUAGE_RESULTS}.
+     */
+    public static final String PARTIAL = "partial";
+
     /**
      * Job execution result: there was nothing to publish.
      */
@@ -93,6 +125,21 @@ public class SiteAdminPublicationJob extends BackgroundJob {
      */
     public static final String UNEXPECTED_FAILURE = "unexpectedFailure";
 
+    /**
+     * Job execution result: the job was cancelled or exceeded its maximum duration, the batches committed before remaining published.
+     */
+    public static final String CANCELLED = "cancelled";
+
+    /**
+     * Lane of the jobs publishing a single page or a small sub-tree.
+     */
+    public static final String LANE_SMALL = "small";
+
+    /**
+     * Lane of the jobs publishing an entire site or a large sub-tree.
+     */
+    public static final String LANE_LARGE = "large";
+
     /**
      * Key of the job data containing the UUID of the site whose nodes are published.
      */
@@ -103,53 +150,198 @@ public class SiteAdminPublicationJob extends BackgroundJob {
      */
     public static final String PUBLICATION_JOB_PATH = "path";
 
+    /**
+     * Key of the job data containing the list of paths of the nodes to be published, when a single job publishes several trees.
+     */
+    public static final String PUBLICATION_JOB_PATHS = "paths";
+
     /**
      * Key of the job data containing code of the language to publish the node in.
      */
     public static final String PUBLICATION_JOB_LANGUAGE = "language";
 
+    /**
+     * Key of the job data containing the list of language codes to publish the node in, when a single job publishes several languages.
+     */
+    public static final String PUBLICATION_JOB_LANGUAGES = "languages";
+
+    /**
+     * Key of the result status of the job execution for each published language, when a single job publishes several languages.
+     */
+    public static final String PUBLICATION_JOB_LANGUAGE_RESULTS = "languageResults";
+
     /**
      * Key of the result status of the job execution.
      */
     public static final String PUBLICATION_JOB_RESULT = "result";
 
     /**
-     * Key of the reported conflicts path.
+     * Key of the reported conflicts path, limited to a short sample, the full list being kept by the {@link PublicationReportStore}.
      */
     public static final String PUBLICATION_JOB_CONFLICTS = "conflict";
 
     /**
-     * Key of the reported missing properties path.
+     * Key of the reported missing properties path, limited to a short sample, the full list being kept by the
+     * {@link PublicationReportStore}.
      */
     public static final String PUBLICATION_JOB_MISSING_PROPERTY = "missingProperty";
 
+    /**
+     * Key of the number of reported conflicts.
+     */
+    public static final String PUBLICATION_JOB_CONFLICT_COUNT = "conflictCount";
+
+    /**
+     * Key of the number of reported missing properties.
+     */
+    public static final String PUBLICATION_JOB_MISSING_PROPERTY_COUNT = "missingPropertyCount";
+
     /**
      * Key of the successful publication end timestamp value.
      */
     public static final String PUBLICATION_JOB_END = "publicationEnd";
 
+    /**
+     * Key of the job data containing the number of nodes a successful job published, from which the throughput of the publications is
+     * estimated.
+     */
+    public static final String PUBLICATION_JOB_PUBLISHED_NODES = "publishedNodes";
+
+    /**
+     * Key of the job data containing the maximum number of nodes to publish in a single transaction, the publication being done in one
+     * transaction when not set.
+     */
+    public static final String PUBLICATION_JOB_BATCH_SIZE = "batchSize";
+
+    /**
+     * Key of the job data containing the maximum number of sub-trees of the publication root published in parallel.
+     */
+    public static final String PUBLICATION_JOB_THREADS = "threads";
+
+    /**
+     * Key of the job data enabling the incremental publication of an entire site, containing the maximum number of modified nodes to
+     * analyse one by one before falling back to the analysis of the whole site.
+     */
+    public static final String PUBLICATION_JOB_DELTA = "delta";
+
+    /**
+     * Key of the time a successful entire site publication started analysing the site, every change made before it being live.
+     */
+    public static final String PUBLICATION_JOB_WATERMARK = "watermark";
+
+    /**
+     * Key of the total number of batches of a publication done in batches.
+     */
+    public static final String PUBLICATION_JOB_BATCHES = "batches";
+
+    /**
+     * Key of the number of batches already committed, i.e. the checkpoint of a publication done in batches.
+     */
+    public static final String PUBLICATION_JOB_BATCHES_DONE = "batchesDone";
+
+    /**
+     * Key of the job data containing the name of the failed job a publication is resuming.
+     */
+    public static final String PUBLICATION_JOB_RESUMED_FROM = "resumedFrom";
+
+    /**
+     * Key of the job data containing the identifier of the publication request the job was scheduled by, its jobs being notified together.
+     */
+    public static final String PUBLICATION_JOB_REQUEST_ID = "requestId";
+
+    /**
+     * Key of the job data containing the other publication requests coalesced into the job, so that their requesters are notified of its
+     * result too: a list of maps holding the user key, the request identifier and the UI locale of each one.
+     */
+    public static final String PUBLICATION_JOB_COALESCED_REQUESTS = "coalescedRequests";
+
+    /**
+     * Key of the job data containing the maximum duration of the job in milliseconds.
+     */
+    public static final String PUBLICATION_JOB_MAX_DURATION = "maxDuration";
+
+    /**
+     * Key of the job data containing the time the job was submitted, in milliseconds, from which its time in the queue is measured.
+     */
+    public static final String PUBLICATION_JOB_SUBMITTED = "submitted";
+
+    /**
+     * Key of the job data containing the time the job is deferred to, in milliseconds, absent for a job scheduled immediately.
+     */
+    public static final String PUBLICATION_JOB_SCHEDULED_FOR = "scheduledFor";
+
+    /**
+     * Key of the job data containing the maximum number of nodes published per second, for a throttled publication.
+     */
+    public static final String PUBLICATION_JOB_MAX_RATE = "maxRate";
+
+    /**
+     * Key of the job data containing the commit latency in milliseconds above which a throttled publication slows down.
+     */
+    public static final String PUBLICATION_JOB_LATENCY_THRESHOLD = "latencyThreshold";
+
+    /**
+     * Key of the job data containing the lane of the job, limiting the number of jobs of the same size running at the same time.
+     */
+    public static final String PUBLICATION_JOB_LANE = "lane";
+
+    /**
+     * Key of the job data containing the maximum number of nodes of a tree analysed at once, larger trees being analysed one sub-tree at a
+     * time.
+     */
+    public static final String PUBLICATION_JOB_ANALYSIS_MAX_NODES = "analysisMaxNodes";
+
     /**
      * Key for UI Locale
      */
     public static final String UI_LOCALE = "uiLocale";
 
+    private static final String TRANSLATION_NODE_PREFIX = "/j:translation_";
+
+    private static final int REPORT_SAMPLE_SIZE = 10;
+
+    private static final String CHANGED_NODES_QUERY = "SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, '%s') AND n.[jcr:lastModified] > CAST('%s' AS DATE)";
+
+    private static final String DESCENDANTS_QUERY = "SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, '%s')";
+
     private static final Logger logger = LoggerFactory.getLogger(SiteAdminPublicationJob.class);
 
     @Override
     public void executeJahiaJob(JobExecutionContext jobExecutionContext) throws Exception {
 
         // get job data
-        JobDetail jobDetail = jobExecutionContext.getJobDetail();
+        final JobDetail jobDetail = jobExecutionContext.getJobDetail();
         final JobDataMap jobDataMap = jobDetail.getJobDataMap();
         final String path = (String) jobDataMap.get(PUBLICATION_JOB_PATH);
-        final String language = (String) jobDataMap.get(PUBLICATION_JOB_LANGUAGE);
+        final List<String> paths = getPaths(jobDataMap);
+        final Set<String> languages = getLanguages(jobDataMap);
+        final int maxRate = jobDataMap.containsKey(PUBLICATION_JOB_MAX_RATE) ? jobDataMap.getIntValueFromString(PUBLICATION_JOB_MAX_RATE) : 0;
+        final int configuredBatchSize = jobDataMap.containsKey(PUBLICATION_JOB_BATCH_SIZE) ? jobDataMap.getIntValueFromString(PUBLICATION_JOB_BATCH_SIZE) : 0;
+        // a throttled publication is always done in batches, by default of one second worth of nodes
+        final int batchSize = configuredBatchSize > 0 ? configuredBatchSize : maxRate;
+        final int threads = jobDataMap.containsKey(PUBLICATION_JOB_THREADS) ? jobDataMap.getIntValueFromString(PUBLICATION_JOB_THREADS) : 1;
+        final int deltaMaxNodes = jobDataMap.containsKey(PUBLICATION_JOB_DELTA) ? jobDataMap.getIntValueFromString(PUBLICATION_JOB_DELTA) : 0;
+        final long latencyThreshold = jobDataMap.containsKey(PUBLICATION_JOB_LATENCY_THRESHOLD) ? Long.parseLong((String) jobDataMap.get(PUBLICATION_JOB_LATENCY_THRESHOLD)) : 0;
+        final int analysisMaxNodes = jobDataMap.containsKey(PUBLICATION_JOB_ANALYSIS_MAX_NODES) ? jobDataMap.getIntValueFromString(PUBLICATION_JOB_ANALYSIS_MAX_NODES) : 0;
+        final String siteUuid = (String) jobDataMap.get(PUBLICATION_JOB_SITE_UUID);
+        final JahiaUser user = JCRSessionFactory.getInstance().getCurrentUser();
+        final PublicationProgressRegistry progressRegistry = (PublicationProgressRegistry) SpringContextSingleton.getBeanInModulesContext("org.jahia.modules.sitesettings.publication.service.PublicationProgressRegistry");
+        final PublicationProgress progress = progressRegistry.start(jobDetail.getName(), siteUuid);
+        if (jobDataMap.containsKey(PUBLICATION_JOB_MAX_DURATION)) {
+            progress.setDeadline(progress.getStart() + Long.parseLong((String) jobDataMap.get(PUBLICATION_JOB_MAX_DURATION)));
+        }
+        final PublicationMetrics metrics = (PublicationMetrics) SpringContextSingleton.getBeanInModulesContext("org.jahia.modules.sitesettings.publication.service.PublicationMetrics");
+        final PublicationMetrics.JobMetrics jobMetrics = metrics.startJob(path, languages, getQueueTime(jobExecutionContext));
 
         try {
 
             final JCRPublicationService publicationService = JCRPublicationService.getInstance();
+            final PublicationWatermarkService watermarkService = (PublicationWatermarkService) SpringContextSingleton.getBeanInModulesContext("org.jahia.modules.sitesettings.publication.service.PublicationWatermarkService");
+            final PublicationInfoCache publicationInfoCache = (PublicationInfoCache) SpringContextSingleton.getBeanInModulesContext("org.jahia.modules.sitesettings.publication.service.PublicationInfoCache");
+            final PublicationReportStore reportStore = (PublicationReportStore) SpringContextSingleton.getBeanInModulesContext("org.jahia.modules.sitesettings.publication.service.PublicationReportStore");
 
             // check data
-            if (StringUtils.isEmpty(path) || StringUtils.isEmpty(language)) {
+            if (paths.isEmpty() || languages.isEmpty()) {
                 throw new IllegalArgumentException("Path and language are mandatory to execute the site admin publication job");
             }
 
@@ -158,17 +350,43 @@ public class SiteAdminPublicationJob extends BackgroundJob {
                 @Override
                 public Object doInJCR(JCRSessionWrapper session) throws RepositoryException {
 
-                    JCRNodeWrapper node = session.getNode(path);
-                    List<PublicationInfo> publicationInfos = publicationService.getPublicationInfo(node.getIdentifier(), Collections.singleton(language), true, true, true, Constants.EDIT_WORKSPACE, Constants.LIVE_WORKSPACE);
+                    List<JCRNodeWrapper> nodes = new ArrayList<>(paths.size());
+                    for (String nodePath : paths) {
+                        if (paths.size() > 1 && !session.nodeExists(nodePath)) {
+                            // a coalesced request whose node has been removed since then does not prevent publishing the other ones
+                            logger.warn("Node [{}] no longer exists, it is left out of the publication", nodePath);
+                            continue;
+                        }
+                        nodes.add(session.getNode(nodePath));
+                    }
+                    JCRNodeWrapper node = (nodes.size() == 1 ? nodes.get(0) : null);
+                    boolean entireSite = (node != null && node.isNodeType(Constants.JAHIANT_VIRTUALSITE));
+                    long analysisStart = System.currentTimeMillis();
 
-                    // check for conflict issues and mandatory properties
-                    List<PublicationInfoNode> nonPublishableInfos = new LinkedList<>();
-                    boolean needPublication = false;
-                    for (PublicationInfo publicationInfo : publicationInfos) {
-                        needPublication |= needsPublication(publicationInfo.getRoot(), nonPublishableInfos);
+                    // in incremental mode, only look at the nodes modified since the last successful entire site publication
+                    Long watermark = (entireSite && deltaMaxNodes > 0 ? watermarkService.getWatermark(siteUuid, languages) : null);
+                    boolean incremental = (watermark != null && watermarkService.isIncrementalPossible(node.getPath(), watermark));
+                    Map<String, String> changedNodes = (incremental ? getChangedNodes(session, node, watermark, deltaMaxNodes) : null);
+                    if (watermark != null && !incremental) {
+                        logger.info("Incremental publication of [{}]: nodes removed, moved or with changed permissions since {}, analysing the whole site", path, new Date(watermark));
+                    } else if (changedNodes != null) {
+                        logger.info("Incremental publication of [{}]: {} node(s) modified since {}", path, changedNodes.size(), new Date(watermark));
+                    } else if (watermark != null) {
+                        logger.info("Incremental publication of [{}]: more than {} node(s) modified, analysing the whole site", path, deltaMaxNodes);
                     }
+
+                    // check for conflict issues and mandatory properties; the publication info computed by a preflight check is reused, its
+                    // entries being invalidated when the nodes change, except by an incremental publication, which analyses the modified
+                    // nodes only and sets the watermark to the start of its analysis
+                    PublicationInfoCache analysisCache = (changedNodes != null ? null : publicationInfoCache);
+                    PublicationAnalysis analysis = analyse(session, analysisCache, nodes, changedNodes, languages, analysisMaxNodes, progress, jobMetrics);
+                    jobMetrics.setCount(PublicationMetrics.COUNT_ANALYSED, analysis.getAnalysedCount());
+                    List<PublicationInfoNode> nonPublishableInfos = analysis.getNonPublishableNodes();
+                    Set<String> blockedLanguages = getBlockedLanguages(nonPublishableInfos, languages);
+                    Set<String> publishableLanguages = new LinkedHashSet<>(languages);
+                    publishableLanguages.removeAll(blockedLanguages);
                     if (!nonPublishableInfos.isEmpty()) {
-                        logger.warn("Site admin publication job for path [{}] and language [{}] has been aborted due to conflicts or missing mandatory properties", path, language);
+                        logger.warn("Site admin publication job for path [{}] and language(s) [{}] has been aborted due to conflicts or missing mandatory properties", path, StringUtils.join(blockedLanguages, ", "));
                         jobDataMap.put(PUBLICATION_JOB_RESULT, ERROR);
                         List<String> conflictNodes = new ArrayList<>();
                         List<String> missingMandatoryPropertyNodes = new ArrayList<>();
@@ -179,49 +397,373 @@ public class SiteAdminPublicationJob extends BackgroundJob {
                                 missingMandatoryPropertyNodes.add(publicationInfo.getPath());
                             }
                         }
-                        jobDataMap.put(PUBLICATION_JOB_CONFLICTS, conflictNodes);
-                        jobDataMap.put(PUBLICATION_JOB_MISSING_PROPERTY, missingMandatoryPropertyNodes);
-                    } else if (!needPublication) {
+                        // only keep a sample in the job data, which is stored and loaded along with the job
+                        jobDataMap.put(PUBLICATION_JOB_CONFLICTS, new ArrayList<>(conflictNodes.subList(0, Math.min(REPORT_SAMPLE_SIZE, conflictNodes.size()))));
+                        jobDataMap.put(PUBLICATION_JOB_MISSING_PROPERTY, new ArrayList<>(missingMandatoryPropertyNodes.subList(0, Math.min(REPORT_SAMPLE_SIZE, missingMandatoryPropertyNodes.size()))));
+                        jobDataMap.put(PUBLICATION_JOB_CONFLICT_COUNT, Integer.toString(conflictNodes.size()));
+                        jobDataMap.put(PUBLICATION_JOB_MISSING_PROPERTY_COUNT, Integer.toString(missingMandatoryPropertyNodes.size()));
+                        Map<String, List<String>> report = new LinkedHashMap<>();
+                        report.put(PUBLICATION_JOB_CONFLICTS, conflictNodes);
+                        report.put(PUBLICATION_JOB_MISSING_PROPERTY, missingMandatoryPropertyNodes);
+                        try {
+                            reportStore.write(jobDetail.getName(), report);
+                        } catch (IOException | RepositoryException e) {
+                            logger.warn("Unable to store the report of publication job " + jobDetail.getName() + ", only a sample of it is kept", e);
+                        }
+                    }
+
+                    String publicationResult;
+                    if (!analysis.isPublicationNeeded()) {
                         // nothing to publish
-                        logger.info("Site admin publication job for path [{}] and language [{}] finished with nothing to publish", path, language);
+                        logger.info("Site admin publication job for path [{}] and language(s) [{}] finished with nothing to publish", path, StringUtils.join(languages, ", "));
                         jobDataMap.put(PUBLICATION_JOB_RESULT, NOTHING_TO_PUBLISH);
+                        publicationResult = NOTHING_TO_PUBLISH;
+                    } else if (publishableLanguages.isEmpty()) {
+                        publicationResult = ERROR;
                     } else {
-                        // do the publication
-                        publicationService.publishByMainId(node.getIdentifier(), Constants.EDIT_WORKSPACE, Constants.LIVE_WORKSPACE, Collections.singleton(language), true, Collections.<String>emptyList());
+                        // do the publication, for the languages which are not blocked by a translation specific issue
+                        progress.checkCancelled();
+                        long publicationStart = System.nanoTime();
+                        if (batchSize <= 0 && threads <= 1 && analysisMaxNodes <= 0 && changedNodes == null && node != null) {
+                            // neither batched nor throttled, nor too large to compute the publication info of the whole tree again
+                            progress.startPublishing(analysis.getPublishableUuids().size());
+                            publicationService.publishByMainId(node.getIdentifier(), Constants.EDIT_WORKSPACE, Constants.LIVE_WORKSPACE, publishableLanguages, true, Collections.<String>emptyList());
+                            progress.addPublished(analysis.getPublishableUuids().size());
+                        } else {
+                            if (!blockedLanguages.isEmpty()) {
+                                // translations of the blocked languages must be left out of the batches
+                                analysis = analyse(session, analysisCache, nodes, changedNodes, publishableLanguages, analysisMaxNodes, progress, jobMetrics);
+                            }
+                            PublicationRunner runner = new PublicationRunner(publicationService, batchSize, jobDataMap, progress,
+                                    maxRate > 0 ? new PublicationThrottle(maxRate, latencyThreshold) : null);
+                            if (threads > 1 && changedNodes == null && node != null) {
+                                runner.publishInParallel(node.getPath(), analysis, threads, user);
+                            } else {
+                                runner.publish(analysis.getPublishableUuids());
+                            }
+                        }
+                        jobMetrics.addTime(PublicationMetrics.PHASE_PUBLICATION, System.nanoTime() - publicationStart);
+                        jobMetrics.setCount(PublicationMetrics.COUNT_PUBLISHED, progress.getPublished());
                         jobDataMap.put(PUBLICATION_JOB_END, Long.toString(System.currentTimeMillis()));
-                        jobDataMap.put(PUBLICATION_JOB_RESULT, SUCCESS);
+                        jobDataMap.put(PUBLICATION_JOB_PUBLISHED_NODES, Integer.toString(progress.getPublished()));
+                        // the languages published despite the blocked ones are reported as such rather than as not executed
+                        jobDataMap.put(PUBLICATION_JOB_RESULT, blockedLanguages.isEmpty() ? SUCCESS : PARTIAL);
+                        publicationResult = SUCCESS;
+                    }
+
+                    if (entireSite && blockedLanguages.isEmpty()) {
+                        // everything modified before the analysis started is now live
+                        for (String lang : languages) {
+                            watermarkService.setWatermark(siteUuid, lang, analysisStart);
+                        }
+                        jobDataMap.put(PUBLICATION_JOB_WATERMARK, Long.toString(analysisStart));
+                    }
+
+                    if (jobDataMap.containsKey(PUBLICATION_JOB_LANGUAGES)) {
+                        HashMap<String, String> languageResults = new HashMap<>();
+                        for (String lang : languages) {
+                            languageResults.put(lang, blockedLanguages.contains(lang) ? ERROR : publicationResult);
+                        }
+                        jobDataMap.put(PUBLICATION_JOB_LANGUAGE_RESULTS, languageResults);
                     }
 
                     return null;
                 }
             });
+        } catch (PublicationCancelledException e) {
+            // the session is released by the template, the batches committed so far can be resumed
+            logger.info("Site admin publication job for path [{}] and language(s) [{}] stopped: {}", path, StringUtils.join(languages, ", "), e.getMessage());
+            jobDataMap.put(PUBLICATION_JOB_END, Long.toString(System.currentTimeMillis()));
+            jobDataMap.put(PUBLICATION_JOB_RESULT, CANCELLED);
         } catch (Exception e) {
             jobDataMap.put(PUBLICATION_JOB_RESULT, UNEXPECTED_FAILURE);
             throw e;
         } finally {
-            // send notification
+            progressRegistry.remove(jobDetail.getName());
+            jobMetrics.completed(getLanguageResults(jobDataMap, languages));
+            // queue the notification, it is sent asynchronously
             try {
                 PublicationResultEmailNotificationService notificationService = (PublicationResultEmailNotificationService) SpringContextSingleton.getBeanInModulesContext("org.jahia.modules.sitesettings.publication.service.PublicationResultEmailNotificationService");
-                notificationService.notifyJobCompleted(jobDataMap);
+                notificationService.notifyJobCompleted(jobDetail.getName(), jobDataMap);
             } catch (Exception e) {
                 // avoid failing the entire job due to any secondary notification issues, just log instead
-                String message = "Error sending notification aboult completion of publication of " + path + " in language " + language + " (was '" + jobDataMap.get(PUBLICATION_JOB_RESULT) + "')";
+                String message = "Error queuing notification about completion of publication of " + path + " in language(s) " + StringUtils.join(languages, ", ") + " (was '" + jobDataMap.get(PUBLICATION_JOB_RESULT) + "')";
                 logger.error(message, e);
             }
         }
     }
 
-    private static boolean needsPublication(PublicationInfoNode publicationInfoNode, List<PublicationInfoNode> nonPublishableInfos) {
-        boolean needsPublication = publicationInfoNode.getStatus() != PublicationInfo.PUBLISHED;
-        if (publicationInfoNode.getStatus() == PublicationInfo.CONFLICT || publicationInfoNode.getStatus() == PublicationInfo.MANDATORY_LANGUAGE_UNPUBLISHABLE) {
-            nonPublishableInfos.add(publicationInfoNode);
+    /**
+     * Returns the time a job waited before starting, from its submission or, for a deferred job, from the time it was deferred to. A job
+     * held back by the admission control is fired by retry triggers, so the scheduled fire time of the current trigger is only used for
+     * the jobs submitted without their submission time.
+     */
+    private static long getQueueTime(JobExecutionContext jobExecutionContext) {
+        JobDataMap jobDataMap = jobExecutionContext.getJobDetail().getJobDataMap();
+        long fireTime = jobExecutionContext.getFireTime().getTime();
+        if (!jobDataMap.containsKey(PUBLICATION_JOB_SUBMITTED)) {
+            return fireTime - jobExecutionContext.getScheduledFireTime().getTime();
+        }
+        long queued = Long.parseLong((String) jobDataMap.get(PUBLICATION_JOB_SUBMITTED));
+        if (jobDataMap.containsKey(PUBLICATION_JOB_SCHEDULED_FOR)) {
+            queued = Math.max(queued, Long.parseLong((String) jobDataMap.get(PUBLICATION_JOB_SCHEDULED_FOR)));
+        }
+        return Math.max(0, fireTime - queued);
+    }
+
+    /**
+     * Analyses the publication of the given nodes, either their whole trees or, in incremental mode, only the given modified nodes. The
+     * publication info is taken from the cache, if any, when a preflight check of the same publication computed it already.
+     */
+    private static PublicationAnalysis analyse(JCRSessionWrapper session, PublicationInfoCache publicationInfoCache, List<JCRNodeWrapper> nodes,
+            Map<String, String> changedNodes, Set<String> languages, int maxNodes, PublicationProgress progress, PublicationMetrics.JobMetrics jobMetrics)
+            throws RepositoryException {
+        PublicationAnalysis analysis = new PublicationAnalysis();
+        if (changedNodes == null) {
+            for (JCRNodeWrapper node : nodes) {
+                if (maxNodes > 0) {
+                    analyseBySubTree(session, analysis, node.getPath(), languages, maxNodes, progress, jobMetrics);
+                } else {
+                    analyse(analysis, publicationInfoCache, node.getIdentifier(), languages, true, jobMetrics);
+                }
+                progress.setAnalysed(analysis.getAnalysedCount());
+                progress.setNonPublishable(analysis.getNonPublishableNodes().size());
+            }
+            return analysis;
+        }
+        for (String uuid : changedNodes.values()) {
+            // nodes are sorted by path, sub-nodes of an already analysed node are skipped
+            if (!analysis.isVisited(uuid)) {
+                analyse(analysis, publicationInfoCache, uuid, languages, false, jobMetrics);
+                progress.setAnalysed(analysis.getAnalysedCount());
+                progress.setNonPublishable(analysis.getNonPublishableNodes().size());
+            }
+        }
+        return analysis;
+    }
+
+    /**
+     * Analyses the tree of the given node one sub-tree at a time, so that the publication info of no more than about maxNodes nodes, plus
+     * their references, is held at once. A tree small enough is analysed at once, otherwise its root is analysed with the content published
+     * along with it only, and each of the nodes below having an independent publication, e.g. pages and folders, is handled the same way, in
+     * document order. The nodes below each level are counted with a single query, and each sub-tree on its own only when they are too
+     * many. The publication info of each part is not cached, as it is only used once, and is released once analysed, and so are the nodes
+     * loaded in the session, which has no pending changes at this point.
+     */
+    private static void analyseBySubTree(JCRSessionWrapper session, PublicationAnalysis analysis, String rootPath, Set<String> languages, int maxNodes,
+            PublicationProgress progress, PublicationMetrics.JobMetrics jobMetrics) throws RepositoryException {
+        Deque<String> subTreePaths = new ArrayDeque<>();
+        subTreePaths.push(rootPath);
+        Set<String> largeSubTrees = getLargeSubTrees(session, rootPath, Collections.singletonList(rootPath), maxNodes);
+        while (!subTreePaths.isEmpty()) {
+            progress.checkCancelled();
+            String path = subTreePaths.pop();
+            JCRNodeWrapper node = session.getNode(path);
+            if (!largeSubTrees.remove(path)) {
+                analyse(analysis, null, node.getIdentifier(), languages, true, jobMetrics);
+            } else {
+                analyse(analysis, null, node.getIdentifier(), languages, false, jobMetrics);
+                List<String> childPaths = getIndependentSubTreePaths(node);
+                if (!childPaths.isEmpty()) {
+                    largeSubTrees.addAll(getLargeSubTrees(session, path, childPaths, maxNodes));
+                }
+                for (ListIterator<String> it = childPaths.listIterator(childPaths.size()); it.hasPrevious(); ) {
+                    subTreePaths.push(it.previous());
+                }
+            }
+            progress.setAnalysed(analysis.getAnalysedCount());
+            progress.setNonPublishable(analysis.getNonPublishableNodes().size());
+            session.refresh(false);
         }
-        for (PublicationInfoNode child : publicationInfoNode.getChildren()) {
-            needsPublication |= needsPublication(child, nonPublishableInfos);
+    }
+
+    /**
+     * Returns the paths of the nearest nodes below the given one having an independent publication, in document order: the nodes in between
+     * are part of the publication info of the given node.
+     */
+    private static List<String> getIndependentSubTreePaths(JCRNodeWrapper node) throws RepositoryException {
+        List<String> paths = new ArrayList<>();
+        Deque<JCRNodeWrapper> nodes = new ArrayDeque<>();
+        pushChildren(node, nodes);
+        while (!nodes.isEmpty()) {
+            JCRNodeWrapper child = nodes.pop();
+            if (JCRPublicationService.hasIndependantPublication(child)) {
+                paths.add(child.getPath());
+            } else {
+                pushChildren(child, nodes);
+            }
+        }
+        return paths;
+    }
+
+    private static void pushChildren(JCRNodeWrapper node, Deque<JCRNodeWrapper> nodes) throws RepositoryException {
+        // translations are part of the publication info of the node they translate
+        List<JCRNodeWrapper> children = new ArrayList<>();
+        for (JCRNodeWrapper child : node.getNodes()) {
+            if (!child.isNodeType(Constants.JAHIANT_TRANSLATION)) {
+                children.add(child);
+            }
         }
-        for (PublicationInfo reference : publicationInfoNode.getReferences()) {
-            needsPublication |= needsPublication(reference.getRoot(), nonPublishableInfos);
+        for (ListIterator<JCRNodeWrapper> it = children.listIterator(children.size()); it.hasPrevious(); ) {
+            nodes.push(it.previous());
+        }
+    }
+
+    /**
+     * Tells which of the given sub-trees have more than the given number of nodes. The descendants of the given node, which is either their
+     * common ancestor or the root of the only sub-tree, are counted first with a query limited to that number: when there are not more,
+     * none of the sub-trees is large, otherwise each of them is counted the same way. No query reads more than maxNodes + 1 nodes, whatever
+     * the number of sub-trees.
+     *
+     * @return the paths of the large sub-trees
+     */
+    private static Set<String> getLargeSubTrees(JCRSessionWrapper session, String path, List<String> subTreePaths, int maxNodes) throws RepositoryException {
+        Set<String> largeSubTrees = new HashSet<>();
+        if (countDescendants(session, path, maxNodes + 1) <= maxNodes) {
+            return largeSubTrees;
+        }
+        for (String subTreePath : subTreePaths) {
+            // the root of a sub-tree is not returned by the query
+            if (subTreePath.equals(path) || countDescendants(session, subTreePath, maxNodes) >= maxNodes) {
+                largeSubTrees.add(subTreePath);
+            }
+        }
+        return largeSubTrees;
+    }
+
+    /**
+     * Counts the descendants of the given node, up to the given limit.
+     */
+    private static long countDescendants(JCRSessionWrapper session, String path, long limit) throws RepositoryException {
+        Query query = session.getWorkspace().getQueryManager().createQuery(String.format(DESCENDANTS_QUERY, JCRContentUtils.sqlEncode(path)), Query.JCR_SQL2);
+        query.setLimit(limit);
+        long count = 0;
+        for (NodeIterator it = query.execute().getNodes(); it.hasNext(); it.nextNode()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static void analyse(PublicationAnalysis analysis, PublicationInfoCache publicationInfoCache, String uuid, Set<String> languages, boolean allSubTree,
+            PublicationMetrics.JobMetrics jobMetrics) throws RepositoryException {
+        long start = System.nanoTime();
+        List<PublicationInfo> publicationInfos = (publicationInfoCache != null ? publicationInfoCache.getPublicationInfo(uuid, languages, allSubTree)
+                : PublicationInfoCache.compute(uuid, languages, allSubTree));
+        long analysisStart = System.nanoTime();
+        analysis.analyse(publicationInfos);
+        jobMetrics.addTime(PublicationMetrics.PHASE_PUBLICATION_INFO, analysisStart - start);
+        jobMetrics.addTime(PublicationMetrics.PHASE_ANALYSIS, System.nanoTime() - analysisStart);
+    }
+
+    /**
+     * Returns the result of a completed job for each of its languages.
+     */
+    @SuppressWarnings("unchecked")
+    private static Map<String, String> getLanguageResults(JobDataMap jobDataMap, Set<String> languages) {
+        Object languageResults = jobDataMap.get(PUBLICATION_JOB_LANGUAGE_RESULTS);
+        if (languageResults instanceof Map) {
+            return (Map<String, String>) languageResults;
+        }
+        Map<String, String> results = new HashMap<>();
+        for (String lang : languages) {
+            results.put(lang, (String) jobDataMap.get(PUBLICATION_JOB_RESULT));
+        }
+        return results;
+    }
+
+    /**
+     * Returns the identifiers of the nodes of the given tree modified after the given time, sorted by path, translation nodes being replaced
+     * by the node they translate.
+     *
+     * @return the modified nodes, or null if there are more than maxNodes of them
+     */
+    private static Map<String, String> getChangedNodes(JCRSessionWrapper session, JCRNodeWrapper root, long since, int maxNodes) throws RepositoryException {
+        Calendar sinceDate = Calendar.getInstance();
+        sinceDate.setTimeInMillis(since);
+        Query query = session.getWorkspace().getQueryManager().createQuery(String.format(CHANGED_NODES_QUERY, JCRContentUtils.sqlEncode(root.getPath()), ISO8601.format(sinceDate)), Query.JCR_SQL2);
+        query.setLimit(maxNodes + 1L);
+
+        Map<String, String> changedNodes = new TreeMap<>();
+        Date lastModified = root.getLastModifiedAsDate();
+        if (lastModified != null && lastModified.getTime() > since) {
+            changedNodes.put(root.getPath(), root.getIdentifier());
+        }
+        for (NodeIterator it = query.execute().getNodes(); it.hasNext(); ) {
+            JCRNodeWrapper changedNode = (JCRNodeWrapper) it.nextNode();
+            if (changedNode.isNodeType(Constants.JAHIANT_TRANSLATION)) {
+                changedNode = changedNode.getParent();
+            }
+            changedNodes.put(changedNode.getPath(), changedNode.getIdentifier());
+            if (changedNodes.size() > maxNodes) {
+                return null;
+            }
+        }
+        return changedNodes;
+    }
+
+    /**
+     * Returns the other publication requests coalesced into a job.
+     *
+     * @param jobDataMap the job data
+     * @return the user key, request identifier and UI locale of each coalesced request
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Map<String, Object>> getCoalescedRequests(Map<String, Object> jobDataMap) {
+        List<Map<String, Object>> requests = (List<Map<String, Object>>) jobDataMap.get(PUBLICATION_JOB_COALESCED_REQUESTS);
+        return requests != null ? requests : Collections.<Map<String, Object>>emptyList();
+    }
+
+    /**
+     * Returns the paths of the nodes published by a job, whether it publishes one or several trees.
+     *
+     * @param jobDataMap the job data
+     * @return the paths of the published nodes
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> getPaths(JobDataMap jobDataMap) {
+        Collection<String> paths = (Collection<String>) jobDataMap.get(PUBLICATION_JOB_PATHS);
+        if (paths != null) {
+            return new ArrayList<>(paths);
+        }
+        String path = (String) jobDataMap.get(PUBLICATION_JOB_PATH);
+        return StringUtils.isEmpty(path) ? Collections.<String>emptyList() : Collections.singletonList(path);
+    }
+
+    /**
+     * Returns the codes of the languages published by a job, whether it publishes one or several languages.
+     *
+     * @param jobDataMap the job data
+     * @return the codes of the published languages
+     */
+    @SuppressWarnings("unchecked")
+    public static Set<String> getLanguages(JobDataMap jobDataMap) {
+        Collection<String> languages = (Collection<String>) jobDataMap.get(PUBLICATION_JOB_LANGUAGES);
+        if (languages != null) {
+            return new LinkedHashSet<>(languages);
+        }
+        String language = (String) jobDataMap.get(PUBLICATION_JOB_LANGUAGE);
+        return StringUtils.isEmpty(language) ? Collections.<String>emptySet() : Collections.singleton(language);
+    }
+
+    /**
+     * Returns the languages which cannot be published due to the given non publishable nodes: an issue on a translation node only blocks
+     * its language, any other issue blocks all of them.
+     */
+    private static Set<String> getBlockedLanguages(List<PublicationInfoNode> nonPublishableInfos, Set<String> languages) {
+        Set<String> blockedLanguages = new LinkedHashSet<>();
+        for (PublicationInfoNode publicationInfo : nonPublishableInfos) {
+            String path = publicationInfo.getPath();
+            int translationIndex = path != null ? path.lastIndexOf(TRANSLATION_NODE_PREFIX) : -1;
+            if (translationIndex < 0) {
+                return languages;
+            }
+            String translationLanguage = StringUtils.substringBefore(path.substring(translationIndex + TRANSLATION_NODE_PREFIX.length()), "/");
+            if (languages.contains(translationLanguage)) {
+                blockedLanguages.add(translationLanguage);
+            } else {
+                return languages;
+            }
         }
-        return needsPublication;
+        return blockedLanguages;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,361 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.actions;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import javax.jcr.RepositoryException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.bin.Action;
+import org.jahia.bin.ActionResult;
+import org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob;
+import org.jahia.modules.sitesettings.publication.service.PublicationJobAdmission;
+import org.jahia.modules.sitesettings.publication.service.PublicationJobIndex;
+import org.jahia.modules.sitesettings.publication.service.PublicationReportStore;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.render.RenderContext;
+import org.jahia.services.render.Resource;
+import org.jahia.services.render.URLResolver;
+import org.jahia.services.scheduler.BackgroundJob;
+import org.jahia.utils.i18n.Messages;
+import org.jahia.utils.i18n.ResourceBundles;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Returns the publication jobs of the current site as JSON, for the last publications view to load them page by page.
+ *
+ * Without parameter, the first page of job summaries is returned, most recent first. The "offset" and "limit" parameters select the page,
+ * "sort" (begin, end, path, language or status, any other value being rejected) and "order" (asc or desc) the sorting, "path" and
+ * "status" filter the jobs by path substring and by status. The potentially long lists of conflicting nodes and nodes missing mandatory
+ * properties are not part of the summaries: they are returned for a single job when its name is given by the "jobName" parameter.
+ */
+public class PublicationJobsAction extends Action {
+
+    private static final int DEFAULT_LIMIT = 20;
+
+    private static final int MAX_LIMIT = 100;
+
+    private static final String DATE_FORMAT = "MM/dd/yyyy HH:mm:ss";
+
+    private static final String MESSAGE_PREFIX = "siteSettingsPublication.publicationJobs.";
+
+    private static final String SORT_STATUS = "status";
+
+    private static final List<String> SORT_KEYS = Arrays.asList(BackgroundJob.JOB_BEGIN, BackgroundJob.JOB_END, SiteAdminPublicationJob.PUBLICATION_JOB_PATH,
+            SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE, SORT_STATUS);
+
+    private static final Logger logger = LoggerFactory.getLogger(PublicationJobsAction.class);
+
+    private PublicationJobIndex publicationJobIndex;
+
+    private PublicationReportStore publicationReportStore;
+
+    private PublicationJobAdmission publicationJobAdmission;
+
+    @Override
+    public ActionResult doExecute(HttpServletRequest req, RenderContext renderContext, Resource resource, JCRSessionWrapper session,
+            Map<String, List<String>> parameters, URLResolver urlResolver) throws Exception {
+
+        String siteUuid = resource.getNode().getResolveSite().getIdentifier();
+        ResourceBundle resourceBundle = ResourceBundles.get("resources.SiteSettings-Publication", renderContext.getUILocale());
+        List<JobDetail> jobs = publicationJobIndex.getJobs(siteUuid);
+
+        String jobName = getParameter(parameters, "jobName");
+        if (jobName != null) {
+            for (JobDetail job : jobs) {
+                if (job.getName().equals(jobName)) {
+                    return new ActionResult(HttpServletResponse.SC_OK, null, getDetails(job, resourceBundle));
+                }
+            }
+            return new ActionResult(HttpServletResponse.SC_NOT_FOUND);
+        }
+
+        // filter
+        String pathFilter = StringUtils.lowerCase(StringUtils.trimToNull(getParameter(parameters, "path")));
+        String statusFilter = StringUtils.trimToNull(getParameter(parameters, "status"));
+        List<JobDetail> filteredJobs = filter(jobs, pathFilter, statusFilter);
+
+        // sort, only on the columns of the view
+        String sort = StringUtils.defaultString(getParameter(parameters, "sort"), BackgroundJob.JOB_BEGIN);
+        if (!SORT_KEYS.contains(sort)) {
+            return new ActionResult(HttpServletResponse.SC_BAD_REQUEST);
+        }
+        Comparator<JobDetail> comparator = getComparator(sort);
+        if (!"asc".equals(getParameter(parameters, "order"))) {
+            comparator = Collections.reverseOrder(comparator);
+        }
+        Collections.sort(filteredJobs, comparator);
+
+        // page
+        int offset = Math.max(0, getIntParameter(parameters, "offset", 0));
+        int limit = Math.min(MAX_LIMIT, Math.max(1, getIntParameter(parameters, "limit", DEFAULT_LIMIT)));
+        JSONArray summaries = new JSONArray();
+        for (JobDetail job : getPage(filteredJobs, offset, limit)) {
+            summaries.put(getSummary(job, resourceBundle));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put("total", filteredJobs.size());
+        result.put("offset", offset);
+        result.put("limit", limit);
+        result.put("jobs", summaries);
+        return new ActionResult(HttpServletResponse.SC_OK, null, result);
+    }
+
+    private JSONObject getSummary(JobDetail job, ResourceBundle resourceBundle) throws JSONException {
+        JobDataMap jobDataMap = job.getJobDataMap();
+        String status = getStatus(jobDataMap);
+        String result = (String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT);
+
+        JSONObject summary = new JSONObject();
+        summary.put("name", job.getName());
+        summary.put("begin", formatDate(jobDataMap.get(BackgroundJob.JOB_BEGIN)));
+        summary.put("end", formatDate(jobDataMap.get(BackgroundJob.JOB_END)));
+        summary.put("path", jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH));
+        summary.put("language", jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE));
+        summary.put("status", status);
+        summary.put("statusLabel", Messages.get(resourceBundle, MESSAGE_PREFIX + status));
+        summary.put("completed", result != null);
+        // once its time is reached, a deferred job waiting for admission shows its queue position like the other jobs
+        if (result == null && BackgroundJob.STATUS_SCHEDULED.equals(status)
+                && getTime(jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_SCHEDULED_FOR)) > System.currentTimeMillis()) {
+            summary.put("detailsLabel", Messages.getWithArgs(resourceBundle, MESSAGE_PREFIX + "deferred", formatDate(jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_SCHEDULED_FOR))));
+        } else if (result == null && publicationJobAdmission.getQueuePosition(job.getName()) > 0) {
+            summary.put("detailsLabel", Messages.getWithArgs(resourceBundle, MESSAGE_PREFIX + "queued", publicationJobAdmission.getQueuePosition(job.getName())));
+        } else if (result == null) {
+            summary.put("detailsLabel", Messages.get(resourceBundle, MESSAGE_PREFIX + "details." + status));
+        } else if (SiteAdminPublicationJob.ERROR.equals(result)) {
+            summary.put("hasDetails", true);
+        } else if (SiteAdminPublicationJob.PARTIAL.equals(result)) {
+            summary.put("hasDetails", true);
+            summary.put("detailsLabel", Messages.getWithArgs(resourceBundle, MESSAGE_PREFIX + "partial.details",
+                    StringUtils.join(getLanguages(jobDataMap, SiteAdminPublicationJob.SUCCESS), ", "),
+                    StringUtils.join(getLanguages(jobDataMap, SiteAdminPublicationJob.ERROR), ", ")));
+        } else if (SiteAdminPublicationJob.NOTHING_TO_PUBLISH.equals(result)) {
+            summary.put("detailsLabel", Messages.get(resourceBundle, MESSAGE_PREFIX + "contentPublished"));
+        } else if ((SiteAdminPublicationJob.UNEXPECTED_FAILURE.equals(result) || SiteAdminPublicationJob.CANCELLED.equals(result))
+                && jobDataMap.containsKey(SiteAdminPublicationJob.PUBLICATION_JOB_BATCHES_DONE)) {
+            summary.put("detailsLabel", Messages.getWithArgs(resourceBundle, MESSAGE_PREFIX + "batchesDone",
+                    jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_BATCHES_DONE), jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_BATCHES)));
+            summary.put("resumable", true);
+        }
+        return summary;
+    }
+
+    private JSONObject getDetails(JobDetail job, ResourceBundle resourceBundle) throws JSONException {
+        JobDataMap jobDataMap = job.getJobDataMap();
+        JSONObject details = getSummary(job, resourceBundle);
+
+        // the job data only holds a sample of the full report, which may have expired
+        Map<String, List<String>> report = null;
+        if (jobDataMap.containsKey(SiteAdminPublicationJob.PUBLICATION_JOB_CONFLICT_COUNT)) {
+            try {
+                report = publicationReportStore.read(job.getName());
+            } catch (RepositoryException e) {
+                logger.warn("Unable to read the report of publication job " + job.getName() + ", only a sample of it is returned", e);
+            }
+        }
+        Object conflicts = (report != null ? report.get(SiteAdminPublicationJob.PUBLICATION_JOB_CONFLICTS) : jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_CONFLICTS));
+        Object missingProperties = (report != null ? report.get(SiteAdminPublicationJob.PUBLICATION_JOB_MISSING_PROPERTY) : jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_MISSING_PROPERTY));
+        details.put("conflicts", toJSONArray(conflicts));
+        details.put("missingProperties", toJSONArray(missingProperties));
+        details.put("conflictCount", getCount(jobDataMap, SiteAdminPublicationJob.PUBLICATION_JOB_CONFLICT_COUNT, conflicts));
+        details.put("missingPropertyCount", getCount(jobDataMap, SiteAdminPublicationJob.PUBLICATION_JOB_MISSING_PROPERTY_COUNT, missingProperties));
+        Object languageResults = jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE_RESULTS);
+        if (languageResults instanceof Map) {
+            details.put("languageResults", new JSONObject((Map<?, ?>) languageResults));
+        }
+        return details;
+    }
+
+    /**
+     * @param jobs the jobs of a site
+     * @param pathFilter the lower case text the path of the jobs must contain, null to keep all the paths
+     * @param statusFilter the result or status the jobs must have, null to keep all of them
+     * @return the jobs matching both filters
+     */
+    static List<JobDetail> filter(List<JobDetail> jobs, String pathFilter, String statusFilter) {
+        List<JobDetail> filteredJobs = new ArrayList<>(jobs.size());
+        for (JobDetail job : jobs) {
+            JobDataMap jobDataMap = job.getJobDataMap();
+            if ((pathFilter == null || StringUtils.contains(StringUtils.lowerCase((String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH)), pathFilter))
+                    && (statusFilter == null || statusFilter.equals(getStatus(jobDataMap)))) {
+                filteredJobs.add(job);
+            }
+        }
+        return filteredJobs;
+    }
+
+    /**
+     * @param sort one of the {@link #SORT_KEYS}
+     * @return the ascending order of the jobs on the given key
+     */
+    static Comparator<JobDetail> getComparator(final String sort) {
+        return new Comparator<JobDetail>() {
+
+            @Override
+            public int compare(JobDetail job1, JobDetail job2) {
+                JobDataMap jobDataMap1 = job1.getJobDataMap();
+                JobDataMap jobDataMap2 = job2.getJobDataMap();
+                if (BackgroundJob.JOB_BEGIN.equals(sort) || BackgroundJob.JOB_END.equals(sort)) {
+                    return Long.compare(getTime(jobDataMap1.get(sort)), getTime(jobDataMap2.get(sort)));
+                }
+                String value1 = SORT_STATUS.equals(sort) ? getStatus(jobDataMap1) : (String) jobDataMap1.get(sort);
+                String value2 = SORT_STATUS.equals(sort) ? getStatus(jobDataMap2) : (String) jobDataMap2.get(sort);
+                return StringUtils.defaultString(value1).compareTo(StringUtils.defaultString(value2));
+            }
+        };
+    }
+
+    /**
+     * @param list the sorted items
+     * @param offset the index of the first item of the page
+     * @param limit the maximum number of items of the page
+     * @return the items of the page, empty when the offset is beyond the end of the list
+     */
+    static <T> List<T> getPage(List<T> list, int offset, int limit) {
+        int from = Math.min(offset, list.size());
+        return list.subList(from, Math.min(from + limit, list.size()));
+    }
+
+    /**
+     * Returns the result of a completed job, or the scheduling status of a job which is not.
+     */
+    private static String getStatus(JobDataMap jobDataMap) {
+        String result = (String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT);
+        return result != null ? result : (String) jobDataMap.get(BackgroundJob.JOB_STATUS);
+    }
+
+    /**
+     * Returns the languages of a job publishing several languages which have the given result.
+     */
+    private static List<String> getLanguages(JobDataMap jobDataMap, String result) {
+        List<String> languages = new ArrayList<>();
+        Object languageResults = jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE_RESULTS);
+        if (languageResults instanceof Map) {
+            for (Map.Entry<?, ?> languageResult : ((Map<?, ?>) languageResults).entrySet()) {
+                if (result.equals(languageResult.getValue())) {
+                    languages.add((String) languageResult.getKey());
+                }
+            }
+            Collections.sort(languages);
+        }
+        return languages;
+    }
+
+    private static long getTime(Object time) {
+        return StringUtils.isEmpty((String) time) ? 0 : Long.parseLong((String) time);
+    }
+
+    private static Object formatDate(Object time) {
+        return StringUtils.isEmpty((String) time) ? JSONObject.NULL : new SimpleDateFormat(DATE_FORMAT).format(new Date(getTime(time)));
+    }
+
+    private static int getCount(JobDataMap jobDataMap, String countKey, Object values) {
+        String count = (String) jobDataMap.get(countKey);
+        if (StringUtils.isNotEmpty(count)) {
+            try {
+                return Integer.parseInt(count);
+            } catch (NumberFormatException e) {
+                logger.warn("Invalid count {} in publication job data, using the size of the sample instead", count);
+            }
+        }
+        return values instanceof Collection ? ((Collection<?>) values).size() : 0;
+    }
+
+    private static JSONArray toJSONArray(Object values) {
+        return values instanceof Collection ? new JSONArray((Collection<?>) values) : new JSONArray();
+    }
+
+    private int getIntParameter(Map<String, List<String>> parameters, String name, int defaultValue) {
+        String value = getParameter(parameters, name);
+        if (StringUtils.isNumeric(value) && StringUtils.isNotEmpty(value)) {
+            try {
+                return Integer.parseInt(value);
+            } catch (NumberFormatException e) {
+                // out of the int range
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * @param publicationJobIndex the index of the publication jobs by site
+     */
+    public void setPublicationJobIndex(PublicationJobIndex publicationJobIndex) {
+        this.publicationJobIndex = publicationJobIndex;
+    }
+
+    /**
+     * @param publicationReportStore the store of the full reports of the aborted publications
+     */
+    public void setPublicationReportStore(PublicationReportStore publicationReportStore) {
+        this.publicationReportStore = publicationReportStore;
+    }
+
+    /**
+     * @param publicationJobAdmission the admission control of the publication jobs, holding the queue of the waiting jobs
+     */
+    public void setPublicationJobAdmission(PublicationJobAdmission publicationJobAdmission) {
+        this.publicationJobAdmission = publicationJobAdmission;
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.actions;
+
+import java.util.List;
+import java.util.Map;
+import java.util.ResourceBundle;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.time.DurationFormatUtils;
+import org.jahia.bin.Action;
+import org.jahia.bin.ActionResult;
+import org.jahia.modules.sitesettings.publication.service.PublicationProgress;
+import org.jahia.modules.sitesettings.publication.service.PublicationProgressRegistry;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.render.RenderContext;
+import org.jahia.services.render.Resource;
+import org.jahia.services.render.URLResolver;
+import org.jahia.utils.i18n.Messages;
+import org.jahia.utils.i18n.ResourceBundles;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Returns the progress of the publication jobs of the current site running on this server as JSON, by job name, for the last publications
+ * view to poll it without reloading the jobs.
+ *
+ * The progress of a job holds its phase, the number of nodes analysed, to publish and published, the percentage done, the estimated
+ * remaining time in milliseconds when known, and a label describing all of it.
+ */
+public class PublicationJobsProgressAction extends Action {
+
+    private static final String MESSAGE_PREFIX = "siteSettingsPublication.publicationJobs.progress.";
+
+    private PublicationProgressRegistry publicationProgressRegistry;
+
+    @Override
+    public ActionResult doExecute(HttpServletRequest req, RenderContext renderContext, Resource resource, JCRSessionWrapper session,
+            Map<String, List<String>> parameters, URLResolver urlResolver) throws Exception {
+
+        String siteUuid = resource.getNode().getResolveSite().getIdentifier();
+        ResourceBundle resourceBundle = ResourceBundles.get("resources.SiteSettings-Publication", renderContext.getUILocale());
+
+        JSONObject jobs = new JSONObject();
+        for (Map.Entry<String, PublicationProgress> entry : publicationProgressRegistry.getProgresses(siteUuid).entrySet()) {
+            jobs.put(entry.getKey(), toJSON(entry.getValue(), resourceBundle));
+        }
+        JSONObject result = new JSONObject();
+        result.put("jobs", jobs);
+        return new ActionResult(HttpServletResponse.SC_OK, null, result);
+    }
+
+    private static JSONObject toJSON(PublicationProgress progress, ResourceBundle resourceBundle) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("phase", progress.getPhase().name().toLowerCase());
+        json.put("analysed", progress.getAnalysed());
+        json.put("nonPublishable", progress.getNonPublishable());
+        json.put("toPublish", progress.getToPublish());
+        json.put("published", progress.getPublished());
+        if (progress.getPhase() == PublicationProgress.Phase.ANALYSING) {
+            json.put("percent", 0);
+            String label = Messages.getWithArgs(resourceBundle, MESSAGE_PREFIX + "analysing", progress.getAnalysed());
+            if (progress.getNonPublishable() > 0) {
+                label += " - " + Messages.getWithArgs(resourceBundle, MESSAGE_PREFIX + "nonPublishable", progress.getNonPublishable());
+            }
+            json.put("label", label);
+            return json;
+        }
+
+        int toPublish = progress.getToPublish();
+        json.put("percent", toPublish > 0 ? Math.min(100, progress.getPublished() * 100 / toPublish) : 100);
+        String label = Messages.getWithArgs(resourceBundle, MESSAGE_PREFIX + "publishing", progress.getPublished(), toPublish);
+        long remainingTime = progress.getEstimatedRemainingTime();
+        if (remainingTime >= 0) {
+            json.put("remainingTime", remainingTime);
+            label += " - " + Messages.getWithArgs(resourceBundle, MESSAGE_PREFIX + "remainingTime", DurationFormatUtils.formatDuration(remainingTime, "HH:mm:ss"));
+        }
+        json.put("label", label);
+        return json;
+    }
+
+    /**
+     * @param publicationProgressRegistry the progress of the publication jobs running on this server
+     */
+    public void setPublicationProgressRegistry(PublicationProgressRegistry publicationProgressRegistry) {
+        this.publicationProgressRegistry = publicationProgressRegistry;
+    }
+}
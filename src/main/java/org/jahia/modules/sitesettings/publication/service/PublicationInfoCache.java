@@ -0,0 +1,362 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.api.Constants;
+import org.jahia.services.content.JCRPublicationService;
+import org.jahia.services.content.PublicationInfo;
+import org.jahia.services.content.PublicationInfoNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded cache of the publication info trees computed from the edit workspace to the live one, so that the preflight screen of the
+ * publication panel and the publication job started right after it share the same analysis.
+ *
+ * Entries are keyed by node identifier, languages and depth of the analysis. Their size is measured in number of publication info nodes,
+ * references included, and the least recently used entries are evicted when the total exceeds the configured maximum. An entry is
+ * invalidated as soon as the {@link PublicationInfoCacheListener} reports a change in the edit workspace on one of its nodes or below its
+ * root, publications included as they update the published nodes. The changes reported while a tree is being computed are recorded, and
+ * the tree is not cached if one of them is on one of its nodes or below its root, as it may not reflect that change; changes elsewhere do
+ * not prevent caching it.
+ *
+ * The invalidation follows the JCR observation, so an entry may still be returned shortly after a change: callers needing a tree reflecting
+ * every change made before a given time must use {@link #compute(String, Set, boolean)}.
+ */
+public class PublicationInfoCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublicationInfoCache.class);
+
+    private static final int MAX_RECORDED_CHANGES = 10000;
+
+    private static final class Entry {
+
+        private final List<PublicationInfo> publicationInfos;
+        private final String rootPath;
+        private final Set<String> uuids = new HashSet<>();
+        private final Set<String> paths = new HashSet<>();
+        private int weight;
+
+        private Entry(List<PublicationInfo> publicationInfos) {
+            this.publicationInfos = publicationInfos;
+            this.rootPath = publicationInfos.isEmpty() ? null : publicationInfos.get(0).getRoot().getPath();
+
+            Map<PublicationInfoNode, Boolean> visited = new IdentityHashMap<>();
+            Deque<PublicationInfoNode> nodes = new ArrayDeque<>();
+            for (PublicationInfo publicationInfo : publicationInfos) {
+                nodes.push(publicationInfo.getRoot());
+            }
+            while (!nodes.isEmpty()) {
+                PublicationInfoNode node = nodes.pop();
+                if (visited.put(node, Boolean.TRUE) != null) {
+                    continue;
+                }
+                weight++;
+                if (node.getUuid() != null) {
+                    uuids.add(node.getUuid());
+                }
+                if (node.getPath() != null) {
+                    paths.add(node.getPath());
+                }
+                for (PublicationInfoNode child : node.getChildren()) {
+                    nodes.push(child);
+                }
+                for (PublicationInfo reference : node.getReferences()) {
+                    nodes.push(reference.getRoot());
+                }
+            }
+        }
+
+        private boolean dependsOn(Collection<String> changedUuids, Collection<String> changedPaths) {
+            for (String uuid : changedUuids) {
+                if (uuids.contains(uuid)) {
+                    return true;
+                }
+            }
+            for (String path : changedPaths) {
+                if (paths.contains(path) || paths.contains(StringUtils.substringBeforeLast(path, "/"))
+                        || rootPath != null && path.startsWith(rootPath + "/")) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Changes reported while a tree is being computed, checked against the tree before caching it.
+     */
+    private static final class Computation {
+
+        private final Set<String> changedUuids = new HashSet<>();
+        private final Set<String> changedPaths = new HashSet<>();
+        private boolean overflow;
+
+        private void record(Collection<String> uuids, Collection<String> paths) {
+            if (overflow) {
+                return;
+            }
+            changedUuids.addAll(uuids);
+            changedPaths.addAll(paths);
+            if (changedUuids.size() + changedPaths.size() > MAX_RECORDED_CHANGES) {
+                // too many changes to check them one by one, the tree is not cached
+                overflow = true;
+                changedUuids.clear();
+                changedPaths.clear();
+            }
+        }
+
+        private boolean invalidates(Entry entry) {
+            return overflow || entry.dependsOn(changedUuids, changedPaths);
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Set<Computation> computations = new HashSet<>();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private final AtomicLong evictions = new AtomicLong();
+
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private int maxNodes;
+
+    private int totalWeight;
+
+    /**
+     * Returns the publication info trees of the given node from the edit workspace to the live one, with references and sub-nodes,
+     * computing them with the current session on a cache miss.
+     *
+     * @param uuid identifier of the node
+     * @param languages codes of the languages to compute the publication info for
+     * @param allSubTree whether to include the whole sub-tree of the node or only its non content sub-nodes
+     * @return the publication info trees, to be considered read only
+     * @throws RepositoryException in case of JCR errors
+     */
+    public List<PublicationInfo> getPublicationInfo(String uuid, Set<String> languages, boolean allSubTree) throws RepositoryException {
+        if (maxNodes <= 0) {
+            return compute(uuid, languages, allSubTree);
+        }
+
+        String key = getKey(uuid, languages, allSubTree);
+        Computation computation = new Computation();
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits.incrementAndGet();
+                return entry.publicationInfos;
+            }
+            computations.add(computation);
+        }
+        misses.incrementAndGet();
+
+        List<PublicationInfo> publicationInfos;
+        try {
+            publicationInfos = compute(uuid, languages, allSubTree);
+        } catch (RepositoryException | RuntimeException e) {
+            synchronized (this) {
+                computations.remove(computation);
+            }
+            throw e;
+        }
+        Entry entry = new Entry(publicationInfos);
+        synchronized (this) {
+            computations.remove(computation);
+            if (!computation.invalidates(entry) && entry.weight <= maxNodes) {
+                Entry previous = entries.put(key, entry);
+                if (previous != null) {
+                    totalWeight -= previous.weight;
+                }
+                totalWeight += entry.weight;
+                evict();
+            }
+        }
+        return publicationInfos;
+    }
+
+    /**
+     * Tells whether the publication info trees of the given node are currently cached.
+     *
+     * @param uuid identifier of the node
+     * @param languages codes of the languages
+     * @param allSubTree whether the whole sub-tree of the node is included
+     * @return true if a call to {@link #getPublicationInfo(String, Set, boolean)} would be a hit
+     */
+    public synchronized boolean contains(String uuid, Set<String> languages, boolean allSubTree) {
+        return entries.containsKey(getKey(uuid, languages, allSubTree));
+    }
+
+    /**
+     * Drops the entries depending on the given changed nodes.
+     *
+     * @param changedUuids identifiers of the changed nodes
+     * @param changedPaths paths of the changed nodes and properties
+     */
+    public synchronized void invalidate(Collection<String> changedUuids, Collection<String> changedPaths) {
+        for (Computation computation : computations) {
+            computation.record(changedUuids, changedPaths);
+        }
+        for (Iterator<Entry> it = entries.values().iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.dependsOn(changedUuids, changedPaths)) {
+                it.remove();
+                totalWeight -= entry.weight;
+                invalidations.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Drops all the entries.
+     */
+    public synchronized void clear() {
+        for (Computation computation : computations) {
+            computation.overflow = true;
+        }
+        invalidations.addAndGet(entries.size());
+        entries.clear();
+        totalWeight = 0;
+    }
+
+    private void evict() {
+        for (Iterator<Entry> it = entries.values().iterator(); totalWeight > maxNodes && it.hasNext(); ) {
+            Entry eldest = it.next();
+            it.remove();
+            totalWeight -= eldest.weight;
+            evictions.incrementAndGet();
+        }
+        LOGGER.debug("Publication info cache: {} entries, {} nodes, {} hits, {} misses, {} evictions", entries.size(), totalWeight,
+                hits.get(), misses.get(), evictions.get());
+    }
+
+    /**
+     * Computes the publication info trees of the given node with the current session, without looking them up in the cache nor caching
+     * them, for the callers which need a tree reflecting every change made before the call.
+     *
+     * @param uuid identifier of the node
+     * @param languages codes of the languages to compute the publication info for
+     * @param allSubTree whether to include the whole sub-tree of the node or only its non content sub-nodes
+     * @return the publication info trees, to be considered read only
+     * @throws RepositoryException in case of JCR errors
+     */
+    public static List<PublicationInfo> compute(String uuid, Set<String> languages, boolean allSubTree) throws RepositoryException {
+        return Collections.unmodifiableList(new ArrayList<>(JCRPublicationService.getInstance().getPublicationInfo(uuid, languages, true, true,
+                allSubTree, Constants.EDIT_WORKSPACE, Constants.LIVE_WORKSPACE)));
+    }
+
+    private static String getKey(String uuid, Set<String> languages, boolean allSubTree) {
+        return uuid + '/' + StringUtils.join(new TreeSet<>(languages), ',') + (allSubTree ? "/all" : "");
+    }
+
+    /**
+     * @return the number of lookups served from the cache
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of lookups which had to compute the publication info
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of entries evicted to stay within the maximum size
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * @return the number of entries dropped due to a change in the edit workspace
+     */
+    public long getInvalidationCount() {
+        return invalidations.get();
+    }
+
+    /**
+     * @return the number of cached entries
+     */
+    public synchronized int getSize() {
+        return entries.size();
+    }
+
+    /**
+     * @return the total number of publication info nodes held by the cached entries
+     */
+    public synchronized int getNodeCount() {
+        return totalWeight;
+    }
+
+    /**
+     * @param maxNodes the maximum total number of publication info nodes held by the cache, 0 disabling it
+     */
+    public void setMaxNodes(int maxNodes) {
+        this.maxNodes = maxNodes;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import org.jahia.services.content.DefaultEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Invalidates the entries of the {@link PublicationInfoCache} depending on the nodes changed in the edit workspace, including the changes
+ * done by publications.
+ */
+public class PublicationInfoCacheListener extends DefaultEventListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublicationInfoCacheListener.class);
+
+    private PublicationInfoCache publicationInfoCache;
+
+    @Override
+    public int getEventTypes() {
+        return Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        List<String> changedUuids = new ArrayList<>();
+        List<String> changedPaths = new ArrayList<>();
+        try {
+            while (events.hasNext()) {
+                Event event = events.nextEvent();
+                if (event.getIdentifier() != null) {
+                    changedUuids.add(event.getIdentifier());
+                }
+                changedPaths.add(event.getPath());
+            }
+        } catch (RepositoryException e) {
+            // without knowing what changed, nothing can be trusted anymore
+            LOGGER.warn("Unable to read the JCR events, clearing the publication info cache", e);
+            publicationInfoCache.clear();
+            return;
+        }
+        publicationInfoCache.invalidate(changedUuids, changedPaths);
+    }
+
+    /**
+     * @param publicationInfoCache the cache to invalidate
+     */
+    public void setPublicationInfoCache(PublicationInfoCache publicationInfoCache) {
+        this.publicationInfoCache = publicationInfoCache;
+    }
+}
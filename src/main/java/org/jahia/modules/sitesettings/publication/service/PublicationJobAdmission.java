@@ -0,0 +1,347 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob;
+import org.jahia.services.scheduler.BackgroundJob;
+import org.jahia.services.scheduler.SchedulerService;
+import org.jahia.settings.SettingsBean;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.SchedulerException;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
+import org.quartz.TriggerListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admission control of the publication jobs, limiting the number of jobs running at the same time, so that concurrent publications do not
+ * saturate the repository and small publications do not queue behind entire site ones.
+ *
+ * A job is admitted when the following limits are not reached:
+ * <ul>
+ * <li>the maximum number of publication jobs running overall</li>
+ * <li>the maximum number of publication jobs running for its site, which only applies to the jobs of the large lane so that a site
+ * publishing its whole content can still publish small changes</li>
+ * <li>the maximum number of jobs running in its lane. Jobs are assigned a lane when they are scheduled: entire site publications and large
+ * sub-trees go to the large lane, the other ones to the small lane. As large jobs can never take the capacity of the small lane, a small
+ * job waits at most for another small job to complete, provided the overall limit is above the limit of the large lane.</li>
+ * </ul>
+ * This listener vetoes the execution of a job which cannot be admitted, which frees the scheduler thread immediately, and fires the job
+ * again after a delay. Waiting jobs are kept in a FIFO queue: a job is only admitted if no job waiting before it could be admitted
+ * instead, the jobs of a site having reached its limit being skipped so that they do not hold up the other sites.
+ *
+ * All the limits are disabled by default, a limit of 0 or less meaning no limit: the jobs are then executed as soon as they fire, like
+ * without this listener.
+ *
+ * The counts and the queue are kept in memory, so the limits can only hold across a cluster if all the publication jobs run on the same
+ * server: when limits are configured, a publication job firing on a server other than the processing server is vetoed and fired again
+ * later, until the processing server picks it up from the shared job store. The queue positions are thus only known on the processing
+ * server.
+ */
+public class PublicationJobAdmission implements TriggerListener {
+
+    /**
+     * A publication job waiting for admission or running.
+     */
+    private static class AdmittedJob {
+
+        private final String siteUuid;
+
+        private final String lane;
+
+        private long lastSeen;
+
+        AdmittedJob(String siteUuid, String lane) {
+            this.siteUuid = siteUuid;
+            this.lane = lane;
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(PublicationJobAdmission.class);
+
+    private static final String NAME = PublicationJobAdmission.class.getName();
+
+    /**
+     * Number of retry delays after which a waiting job which did not fire again, e.g. because it was deleted, leaves the queue.
+     */
+    private static final int WAITING_EXPIRY_RETRIES = 10;
+
+    private final Map<String, AdmittedJob> waitingJobs = new LinkedHashMap<>();
+
+    private final Map<JobExecutionContext, AdmittedJob> runningJobs = new HashMap<>();
+
+    private SchedulerService schedulerService;
+
+    private int maxJobs;
+
+    private int siteMaxJobs;
+
+    private int smallLaneMaxJobs;
+
+    private int largeLaneMaxJobs;
+
+    private long retryDelay = 5000;
+
+    /**
+     * Registers this listener on the scheduler.
+     *
+     * @throws SchedulerException in case the listener cannot be registered
+     */
+    public void start() throws SchedulerException {
+        schedulerService.getScheduler().addGlobalTriggerListener(this);
+    }
+
+    /**
+     * Unregisters this listener from the scheduler.
+     *
+     * @throws SchedulerException in case the listener cannot be unregistered
+     */
+    public void stop() throws SchedulerException {
+        schedulerService.getScheduler().removeGlobalTriggerListener(NAME);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void triggerFired(Trigger trigger, JobExecutionContext context) {
+        // admission is decided when the execution can still be vetoed
+    }
+
+    @Override
+    public boolean vetoJobExecution(Trigger trigger, JobExecutionContext context) {
+        JobDetail jobDetail = context.getJobDetail();
+        if (!BackgroundJob.getGroupName(SiteAdminPublicationJob.class).equals(jobDetail.getGroup()) || !isEnabled()) {
+            return false;
+        }
+        if (!SettingsBean.getInstance().isProcessingServer()) {
+            // the limits are only enforced by the processing server
+            logger.debug("Publication job {} is delayed, it is only executed by the processing server", jobDetail.getName());
+        } else if (admit(context)) {
+            return false;
+        } else {
+            logger.debug("Publication job {} is delayed, it is number {} in the queue", jobDetail.getName(), getQueuePosition(jobDetail.getName()));
+        }
+        SimpleTrigger retryTrigger = new SimpleTrigger(jobDetail.getName() + "_Retry" + System.currentTimeMillis(), jobDetail.getGroup(),
+                jobDetail.getName(), jobDetail.getGroup(), new Date(System.currentTimeMillis() + retryDelay), null, 0, 0L);
+        retryTrigger.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_FIRE_NOW);
+        try {
+            context.getScheduler().scheduleJob(retryTrigger);
+        } catch (SchedulerException e) {
+            // better exceed the limits than lose the publication
+            logger.error("Unable to delay publication job " + jobDetail.getName() + ", it is started now", e);
+            forceAdmit(context);
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+        // nothing to do
+    }
+
+    @Override
+    public synchronized void triggerComplete(Trigger trigger, JobExecutionContext context, int triggerInstructionCode) {
+        runningJobs.remove(context);
+    }
+
+    /**
+     * Returns the position of a job in the queue of the jobs waiting for admission.
+     *
+     * @param jobName the name of the publication job
+     * @return the position of the job in the queue, starting at 1, or 0 if the job is not waiting for admission
+     */
+    public synchronized int getQueuePosition(String jobName) {
+        int position = 1;
+        for (String waitingJobName : waitingJobs.keySet()) {
+            if (waitingJobName.equals(jobName)) {
+                return position;
+            }
+            position++;
+        }
+        return 0;
+    }
+
+    /**
+     * Removes a job which was deleted or merged into another one from the queue of the jobs waiting for admission.
+     *
+     * @param jobName the name of the publication job
+     */
+    public synchronized void remove(String jobName) {
+        waitingJobs.remove(jobName);
+    }
+
+    private synchronized boolean admit(JobExecutionContext context) {
+        JobDetail jobDetail = context.getJobDetail();
+        long now = System.currentTimeMillis();
+        for (Iterator<AdmittedJob> it = waitingJobs.values().iterator(); it.hasNext(); ) {
+            if (now - it.next().lastSeen > WAITING_EXPIRY_RETRIES * retryDelay) {
+                it.remove();
+            }
+        }
+
+        AdmittedJob job = waitingJobs.get(jobDetail.getName());
+        if (job == null) {
+            job = new AdmittedJob((String) jobDetail.getJobDataMap().get(SiteAdminPublicationJob.PUBLICATION_JOB_SITE_UUID), getLane(jobDetail));
+            waitingJobs.put(jobDetail.getName(), job);
+        }
+        job.lastSeen = now;
+
+        for (Map.Entry<String, AdmittedJob> waitingJob : waitingJobs.entrySet()) {
+            if (waitingJob.getKey().equals(jobDetail.getName())) {
+                break;
+            }
+            if (isAdmissible(waitingJob.getValue())) {
+                // an older job will be admitted when it fires again
+                return false;
+            }
+        }
+        if (!isAdmissible(job)) {
+            return false;
+        }
+        waitingJobs.remove(jobDetail.getName());
+        runningJobs.put(context, job);
+        return true;
+    }
+
+    private synchronized void forceAdmit(JobExecutionContext context) {
+        AdmittedJob job = waitingJobs.remove(context.getJobDetail().getName());
+        if (job != null) {
+            runningJobs.put(context, job);
+        }
+    }
+
+    /**
+     * Tells whether the lane of a job has an effect on its admission, i.e. whether a lane or the site limit is configured. Otherwise, the
+     * jobs do not need to be assigned a lane when they are scheduled.
+     *
+     * @return true if a limit depends on the lane of the jobs
+     */
+    public boolean isLaneLimited() {
+        return siteMaxJobs > 0 || smallLaneMaxJobs > 0 || largeLaneMaxJobs > 0;
+    }
+
+    private boolean isEnabled() {
+        return maxJobs > 0 || siteMaxJobs > 0 || smallLaneMaxJobs > 0 || largeLaneMaxJobs > 0;
+    }
+
+    private boolean isAdmissible(AdmittedJob job) {
+        if (maxJobs > 0 && runningJobs.size() >= maxJobs) {
+            return false;
+        }
+        boolean large = SiteAdminPublicationJob.LANE_LARGE.equals(job.lane);
+        int laneMaxJobs = large ? largeLaneMaxJobs : smallLaneMaxJobs;
+        int siteJobs = 0;
+        int laneJobs = 0;
+        for (AdmittedJob runningJob : runningJobs.values()) {
+            if (runningJob.siteUuid != null && runningJob.siteUuid.equals(job.siteUuid)) {
+                siteJobs++;
+            }
+            if (runningJob.lane.equals(job.lane)) {
+                laneJobs++;
+            }
+        }
+        return (!large || siteMaxJobs <= 0 || siteJobs < siteMaxJobs) && (laneMaxJobs <= 0 || laneJobs < laneMaxJobs);
+    }
+
+    private static String getLane(JobDetail jobDetail) {
+        // jobs scheduled before lanes were introduced are considered small
+        return SiteAdminPublicationJob.LANE_LARGE.equals(jobDetail.getJobDataMap().get(SiteAdminPublicationJob.PUBLICATION_JOB_LANE))
+                ? SiteAdminPublicationJob.LANE_LARGE : SiteAdminPublicationJob.LANE_SMALL;
+    }
+
+    /**
+     * @param schedulerService the scheduler service the publication jobs are scheduled with
+     */
+    public void setSchedulerService(SchedulerService schedulerService) {
+        this.schedulerService = schedulerService;
+    }
+
+    /**
+     * @param maxJobs the maximum number of publication jobs running at the same time, 0 for no limit other than the ones of the lanes
+     */
+    public void setMaxJobs(int maxJobs) {
+        this.maxJobs = maxJobs;
+    }
+
+    /**
+     * @param siteMaxJobs the maximum number of publication jobs of the same site running at the same time when starting a large job, 0 for no
+     *        limit
+     */
+    public void setSiteMaxJobs(int siteMaxJobs) {
+        this.siteMaxJobs = siteMaxJobs;
+    }
+
+    /**
+     * @param smallLaneMaxJobs the maximum number of small publication jobs running at the same time, 0 for no limit
+     */
+    public void setSmallLaneMaxJobs(int smallLaneMaxJobs) {
+        this.smallLaneMaxJobs = smallLaneMaxJobs;
+    }
+
+    /**
+     * @param largeLaneMaxJobs the maximum number of large publication jobs running at the same time, 0 for no limit
+     */
+    public void setLargeLaneMaxJobs(int largeLaneMaxJobs) {
+        this.largeLaneMaxJobs = largeLaneMaxJobs;
+    }
+
+    /**
+     * @param retryDelay the delay in milliseconds after which a job which could not be admitted is fired again
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+}
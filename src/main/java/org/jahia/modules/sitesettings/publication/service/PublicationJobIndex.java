@@ -0,0 +1,167 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob;
+import org.jahia.services.scheduler.BackgroundJob;
+import org.jahia.services.scheduler.SchedulerService;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+
+/**
+ * Index of the publication jobs by site, so that the jobs of a site can be read without loading and filtering the jobs of all the sites.
+ *
+ * The index only holds job names: the jobs themselves are always read from the scheduler, jobs purged from it being dropped from the index
+ * when found missing. Before the jobs of a site are read, the names of the publication jobs are listed from the scheduler, which shares them
+ * between the cluster nodes, and only the jobs whose name is not known yet are loaded to find their site. Jobs scheduled by other cluster
+ * nodes are thus indexed as soon as they are stored.
+ */
+public class PublicationJobIndex {
+
+    private final Map<String, Set<String>> jobNamesBySite = new ConcurrentHashMap<>();
+
+    private final Set<String> knownJobNames = new HashSet<>();
+
+    private SchedulerService schedulerService;
+
+    /**
+     * Adds a job to the index.
+     *
+     * @param siteUuid UUID of the site the job publishes
+     * @param jobName name of the job
+     */
+    public void add(String siteUuid, String jobName) {
+        getJobNames(siteUuid).add(jobName);
+        synchronized (this) {
+            knownJobNames.add(jobName);
+        }
+    }
+
+    /**
+     * Removes a job from the index.
+     *
+     * @param siteUuid UUID of the site the job publishes
+     * @param jobName name of the job
+     */
+    public void remove(String siteUuid, String jobName) {
+        Set<String> jobNames = jobNamesBySite.get(siteUuid);
+        if (jobNames != null) {
+            jobNames.remove(jobName);
+        }
+    }
+
+    /**
+     * Returns the publication jobs of the given site.
+     *
+     * @param siteUuid UUID of the site
+     * @return the publication jobs of the site
+     * @throws SchedulerException in case the jobs cannot be read from the scheduler
+     */
+    public List<JobDetail> getJobs(String siteUuid) throws SchedulerException {
+        indexNewJobs();
+        Set<String> jobNames = jobNamesBySite.get(siteUuid);
+        if (jobNames == null) {
+            return Collections.emptyList();
+        }
+        Scheduler scheduler = schedulerService.getScheduler();
+        String group = BackgroundJob.getGroupName(SiteAdminPublicationJob.class);
+        List<JobDetail> jobs = new ArrayList<>(jobNames.size());
+        for (String jobName : jobNames) {
+            JobDetail job = scheduler.getJobDetail(jobName, group);
+            if (job != null) {
+                jobs.add(job);
+            } else {
+                jobNames.remove(jobName);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Indexes the publication jobs stored in the scheduler since the last call, whichever cluster node scheduled them.
+     */
+    private synchronized void indexNewJobs() throws SchedulerException {
+        Scheduler scheduler = schedulerService.getScheduler();
+        String group = BackgroundJob.getGroupName(SiteAdminPublicationJob.class);
+        String[] jobNames = scheduler.getJobNames(group);
+        // purged jobs are forgotten, they are dropped from their site when read
+        knownJobNames.retainAll(new HashSet<>(Arrays.asList(jobNames)));
+        for (String jobName : jobNames) {
+            if (!knownJobNames.add(jobName)) {
+                continue;
+            }
+            JobDetail job = scheduler.getJobDetail(jobName, group);
+            String siteUuid = (job != null ? (String) job.getJobDataMap().get(SiteAdminPublicationJob.PUBLICATION_JOB_SITE_UUID) : null);
+            if (siteUuid != null) {
+                getJobNames(siteUuid).add(jobName);
+            }
+        }
+    }
+
+    private Set<String> getJobNames(String siteUuid) {
+        Set<String> jobNames = jobNamesBySite.get(siteUuid);
+        if (jobNames == null) {
+            jobNamesBySite.putIfAbsent(siteUuid, ConcurrentHashMap.<String>newKeySet());
+            jobNames = jobNamesBySite.get(siteUuid);
+        }
+        return jobNames;
+    }
+
+    /**
+     * @param schedulerService Associated SchedulerService
+     */
+    public void setSchedulerService(SchedulerService schedulerService) {
+        this.schedulerService = schedulerService;
+    }
+}
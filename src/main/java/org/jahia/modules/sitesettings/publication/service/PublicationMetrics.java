@@ -0,0 +1,341 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Metrics of the publication jobs run on this server, by site and language, exposed through JMX.
+ *
+ * Each job gets a {@link JobMetrics} accumulating the time spent in its phases, which is recorded in the phase timers once the job is
+ * completed, along with its result and its node counts. A job publishing several languages is accounted in each of them.
+ */
+public class PublicationMetrics implements PublicationMetricsMXBean {
+
+    /**
+     * Time spent waiting for a scheduler thread.
+     */
+    public static final String PHASE_QUEUE = "queue";
+
+    /**
+     * Time spent computing the publication info, cached or not.
+     */
+    public static final String PHASE_PUBLICATION_INFO = "publicationInfo";
+
+    /**
+     * Time spent walking the publication info, looking for conflicts and missing mandatory properties.
+     */
+    public static final String PHASE_ANALYSIS = "analysis";
+
+    /**
+     * Time spent publishing the nodes.
+     */
+    public static final String PHASE_PUBLICATION = "publication";
+
+    /**
+     * Time spent rendering and sending a notification email.
+     */
+    public static final String PHASE_NOTIFICATION = "notification";
+
+    /**
+     * Counter of the nodes analysed.
+     */
+    public static final String COUNT_ANALYSED = "analysedNodes";
+
+    /**
+     * Counter of the nodes published.
+     */
+    public static final String COUNT_PUBLISHED = "publishedNodes";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublicationMetrics.class);
+
+    private static final String OBJECT_NAME = "org.jahia.modules.sitesettings.publication:type=PublicationMetrics";
+
+    private static final String RESULT_PREFIX = "result.";
+
+    /**
+     * Timer of a phase: number of recorded durations, their total and their maximum, in milliseconds.
+     */
+    public static class Timer {
+
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalTime = new AtomicLong();
+        private final AtomicLong maxTime = new AtomicLong();
+
+        private void record(long millis) {
+            count.incrementAndGet();
+            totalTime.addAndGet(millis);
+            for (long max = maxTime.get(); millis > max && !maxTime.compareAndSet(max, millis); max = maxTime.get()) {
+                // retry
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getTotalTime() {
+            return totalTime.get();
+        }
+
+        public long getMaxTime() {
+            return maxTime.get();
+        }
+    }
+
+    /**
+     * Metrics of a single running job, to be used by the thread running it.
+     */
+    public class JobMetrics {
+
+        private final String siteKey;
+        private final Collection<String> languages;
+        private final Map<String, Long> phaseNanos = new HashMap<>();
+        private final Map<String, Long> counts = new HashMap<>();
+
+        private JobMetrics(String siteKey, Collection<String> languages) {
+            this.siteKey = siteKey;
+            this.languages = languages;
+        }
+
+        /**
+         * @param phase one of the PHASE_* constants
+         * @param nanos time spent in the phase, added to the previous ones
+         */
+        public void addTime(String phase, long nanos) {
+            Long previous = phaseNanos.get(phase);
+            phaseNanos.put(phase, (previous != null ? previous : 0) + nanos);
+        }
+
+        /**
+         * @param counter one of the COUNT_* constants
+         * @param count value of the counter for this job
+         */
+        public void setCount(String counter, long count) {
+            counts.put(counter, count);
+        }
+
+        /**
+         * Records the metrics of the completed job.
+         *
+         * @param results the result of the job, by language
+         */
+        public void completed(Map<String, String> results) {
+            runningJobs.decrementAndGet();
+            for (String language : languages) {
+                String prefix = siteKey + '/' + language + '/';
+                for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+                    getTimer(prefix + entry.getKey()).record(TimeUnit.NANOSECONDS.toMillis(entry.getValue()));
+                }
+                for (Map.Entry<String, Long> entry : counts.entrySet()) {
+                    getCounter(prefix + entry.getKey()).addAndGet(entry.getValue());
+                }
+                getCounter(prefix + RESULT_PREFIX + StringUtils.defaultString(results.get(language), "unknown")).incrementAndGet();
+            }
+        }
+    }
+
+    private final AtomicInteger runningJobs = new AtomicInteger();
+
+    private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<>();
+
+    private final ConcurrentMap<String, Timer> timers = new ConcurrentHashMap<>();
+
+    private PublicationInfoCache publicationInfoCache;
+
+    /**
+     * Registers the metrics in the platform MBean server.
+     */
+    public void start() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            LOGGER.warn("Unable to register the publication metrics MBean", e);
+        }
+    }
+
+    /**
+     * Unregisters the metrics from the platform MBean server.
+     */
+    public void stop() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (JMException e) {
+            LOGGER.warn("Unable to unregister the publication metrics MBean", e);
+        }
+    }
+
+    /**
+     * Starts accounting a running job.
+     *
+     * @param path the path of the published node, the site being taken from it
+     * @param languages the published languages
+     * @param queueMillis the time the job waited for a scheduler thread
+     * @return the metrics of the job, to be completed when it ends
+     */
+    public JobMetrics startJob(String path, Collection<String> languages, long queueMillis) {
+        runningJobs.incrementAndGet();
+        JobMetrics jobMetrics = new JobMetrics(getSiteKey(path), languages);
+        jobMetrics.addTime(PHASE_QUEUE, TimeUnit.MILLISECONDS.toNanos(Math.max(0, queueMillis)));
+        return jobMetrics;
+    }
+
+    /**
+     * Records the time spent sending a notification.
+     *
+     * @param path the path of the published node
+     * @param language the published language(s)
+     * @param nanos the time spent rendering and sending the notification
+     */
+    public void recordNotification(String path, String language, long nanos) {
+        getTimer(getSiteKey(path) + '/' + language + '/' + PHASE_NOTIFICATION).record(TimeUnit.NANOSECONDS.toMillis(nanos));
+    }
+
+    @Override
+    public int getRunningJobs() {
+        return runningJobs.get();
+    }
+
+    @Override
+    public Map<String, Long> getCounters() {
+        Map<String, Long> values = new TreeMap<>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            values.put(entry.getKey(), entry.getValue().get());
+        }
+        return values;
+    }
+
+    @Override
+    public Map<String, Timer> getTimers() {
+        return new TreeMap<>(timers);
+    }
+
+    @Override
+    public long getInfoCacheHitCount() {
+        return publicationInfoCache.getHitCount();
+    }
+
+    @Override
+    public long getInfoCacheMissCount() {
+        return publicationInfoCache.getMissCount();
+    }
+
+    @Override
+    public long getInfoCacheEvictionCount() {
+        return publicationInfoCache.getEvictionCount();
+    }
+
+    @Override
+    public int getInfoCacheSize() {
+        return publicationInfoCache.getSize();
+    }
+
+    @Override
+    public void reset() {
+        counters.clear();
+        timers.clear();
+    }
+
+    private AtomicLong getCounter(String key) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong existing = counters.putIfAbsent(key, counter = new AtomicLong());
+            if (existing != null) {
+                counter = existing;
+            }
+        }
+        return counter;
+    }
+
+    private Timer getTimer(String key) {
+        Timer timer = timers.get(key);
+        if (timer == null) {
+            Timer existing = timers.putIfAbsent(key, timer = new Timer());
+            if (existing != null) {
+                timer = existing;
+            }
+        }
+        return timer;
+    }
+
+    /**
+     * Returns the key of the site a node path belongs to, i.e. its second segment for a path like /sites/key/...
+     */
+    private static String getSiteKey(String path) {
+        return StringUtils.defaultIfEmpty(StringUtils.substringBefore(StringUtils.removeStart(StringUtils.defaultString(path), "/sites/"), "/"), "unknown");
+    }
+
+    /**
+     * @param publicationInfoCache the publication info cache whose counters are exposed
+     */
+    public void setPublicationInfoCache(PublicationInfoCache publicationInfoCache) {
+        this.publicationInfoCache = publicationInfoCache;
+    }
+}
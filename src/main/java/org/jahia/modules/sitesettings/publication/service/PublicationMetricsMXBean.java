@@ -0,0 +1,92 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.util.Map;
+
+/**
+ * Management interface of the {@link PublicationMetrics}, registered in the platform MBean server.
+ */
+public interface PublicationMetricsMXBean {
+
+    /**
+     * @return the number of publication jobs currently running on this server
+     */
+    int getRunningJobs();
+
+    /**
+     * @return the counters, i.e. job results and node counts, keyed by "site/language/counter"
+     */
+    Map<String, Long> getCounters();
+
+    /**
+     * @return the phase timers, keyed by "site/language/phase"
+     */
+    Map<String, PublicationMetrics.Timer> getTimers();
+
+    /**
+     * @return the number of publication info cache hits
+     */
+    long getInfoCacheHitCount();
+
+    /**
+     * @return the number of publication info cache misses
+     */
+    long getInfoCacheMissCount();
+
+    /**
+     * @return the number of publication info cache entries evicted to keep the cache under its maximum size
+     */
+    long getInfoCacheEvictionCount();
+
+    /**
+     * @return the number of publication info cache entries currently held
+     */
+    int getInfoCacheSize();
+
+    /**
+     * Resets all the counters and timers.
+     */
+    void reset();
+}
@@ -0,0 +1,275 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
+import javax.script.ScriptEngine;
+import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullWriter;
+import org.apache.commons.lang.StringUtils;
+import org.jahia.bin.listeners.JahiaContextLoaderListener;
+import org.jahia.utils.ScriptEngineUtils;
+import org.jahia.utils.i18n.ResourceBundles;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Renders the publication notification emails.
+ *
+ * Mail templates are looked up like the mail service does, among the module resources first and then in the web application, so that the
+ * configured templates can be replaced without changing the module. They are compiled once per template and locale, resource bundles are resolved once
+ * per locale, and dates are formatted with an immutable formatter, so that rendering is thread-safe and does not parse anything again for
+ * each notification. All the caches belong to this bean and are dropped when it is destroyed, i.e. when the module is stopped or
+ * redeployed.
+ */
+public class PublicationNotificationRenderer {
+
+    /**
+     * A mail template, compiled when its script engine supports it.
+     */
+    private static class Template {
+
+        private final ScriptEngine engine;
+        private final String name;
+        private final String source;
+        private final CompiledScript compiled;
+
+        private Template(ScriptEngine engine, String name, String source) throws ScriptException {
+            this.engine = engine;
+            this.name = name;
+            this.source = source;
+            this.compiled = (engine instanceof Compilable ? ((Compilable) engine).compile(source) : null);
+        }
+
+        private void eval(ScriptContext context) throws ScriptException {
+            if (compiled != null) {
+                compiled.eval(context);
+            } else {
+                engine.eval(source, context);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublicationNotificationRenderer.class);
+
+    private static final String BUNDLE_NAME = "resources.SiteSettings-Publication";
+
+    private static final DateTimeFormatter NOTIFICATION_DATE_TIME_FORMAT = DateTimeFormatter.ofPattern("MM-dd-yyyy HH:mm:ss").withZone(ZoneId.systemDefault());
+
+    private final ConcurrentMap<String, Template> templates = new ConcurrentHashMap<>();
+
+    private final Set<String> missingTemplates = ConcurrentHashMap.newKeySet();
+
+    private final ConcurrentMap<Locale, ResourceBundle> resourceBundles = new ConcurrentHashMap<>();
+
+    /**
+     * Renders a mail template in the given locale.
+     *
+     * @param templatePath path of the template among the module resources or in the web application, without locale suffix
+     * @param locale the locale of the email
+     * @param bindings the bindings made available to the template
+     * @return the rendered email body
+     * @throws ScriptException in case the template cannot be found, compiled or evaluated
+     */
+    public String render(String templatePath, Locale locale, Map<String, Object> bindings) throws ScriptException {
+        Template template = getTemplate(templatePath, locale);
+        if (template == null) {
+            throw new ScriptException("Unable to find mail template " + templatePath + " for locale " + locale);
+        }
+        return render(template, bindings);
+    }
+
+    /**
+     * Renders the subject template of a mail template, if any: as with the mail service, the subject of the email built from a template
+     * "name.vm" can be given by a template "name.subject.vm".
+     *
+     * @param templatePath path of the mail template, without locale suffix
+     * @param locale the locale of the email
+     * @param bindings the bindings made available to the template
+     * @return the rendered subject, or null if the mail template has no subject template
+     * @throws ScriptException in case the subject template cannot be compiled or evaluated
+     */
+    public String renderSubject(String templatePath, Locale locale, Map<String, Object> bindings) throws ScriptException {
+        String subjectPath = StringUtils.substringBeforeLast(templatePath, ".") + ".subject." + StringUtils.substringAfterLast(templatePath, ".");
+        Template template = getTemplate(subjectPath, locale);
+        return template != null ? StringUtils.trimToNull(render(template, bindings)) : null;
+    }
+
+    private static String render(Template template, Map<String, Object> bindings) throws ScriptException {
+        StringWriter writer = new StringWriter();
+        ScriptContext context = new SimpleScriptContext();
+        context.setWriter(writer);
+        context.setErrorWriter(new NullWriter());
+        Bindings engineBindings = template.engine.createBindings();
+        engineBindings.putAll(bindings);
+        engineBindings.put(ScriptEngine.FILENAME, template.name);
+        context.setBindings(engineBindings, ScriptContext.ENGINE_SCOPE);
+        template.eval(context);
+        return writer.toString();
+    }
+
+    /**
+     * @param locale a locale
+     * @return the resource bundle of the module in this locale
+     */
+    public ResourceBundle getResourceBundle(Locale locale) {
+        Locale key = (locale != null ? locale : Locale.ENGLISH);
+        ResourceBundle resourceBundle = resourceBundles.get(key);
+        if (resourceBundle == null) {
+            resourceBundle = ResourceBundles.get(BUNDLE_NAME, key);
+            resourceBundles.putIfAbsent(key, resourceBundle);
+        }
+        return resourceBundle;
+    }
+
+    /**
+     * @param timestamp a time in milliseconds, as stored in the job data
+     * @return the formatted date, or null if no time is given
+     */
+    public String formatDate(String timestamp) {
+        if (StringUtils.isEmpty(timestamp)) {
+            return null;
+        }
+        return NOTIFICATION_DATE_TIME_FORMAT.format(Instant.ofEpochMilli(Long.parseLong(timestamp)));
+    }
+
+    /**
+     * Drops the compiled templates and the resolved resource bundles.
+     */
+    public void clear() {
+        templates.clear();
+        missingTemplates.clear();
+        resourceBundles.clear();
+    }
+
+    private Template getTemplate(String templatePath, Locale locale) throws ScriptException {
+        String key = templatePath + '/' + locale;
+        Template template = templates.get(key);
+        if (template == null) {
+            if (missingTemplates.contains(key)) {
+                return null;
+            }
+            template = loadTemplate(templatePath, locale);
+            if (template == null) {
+                missingTemplates.add(key);
+                return null;
+            }
+            Template existing = templates.putIfAbsent(key, template);
+            if (existing != null) {
+                template = existing;
+            }
+        }
+        return template;
+    }
+
+    private Template loadTemplate(String templatePath, Locale locale) throws ScriptException {
+        String extension = StringUtils.substringAfterLast(templatePath, ".");
+        String basePath = StringUtils.substringBeforeLast(templatePath, ".");
+        for (String candidate : getCandidates(basePath, extension, locale)) {
+            URL resource = getResource(candidate);
+            if (resource == null) {
+                continue;
+            }
+            try (InputStream input = resource.openStream()) {
+                LOGGER.debug("Compiling mail template {} for locale {}", candidate, locale);
+                return new Template(ScriptEngineUtils.getInstance().scriptEngine(extension), candidate, IOUtils.toString(input, StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new ScriptException("Unable to read mail template " + candidate + ": " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Looks a template up among the module resources, then in the web application.
+     */
+    private URL getResource(String path) throws ScriptException {
+        URL resource = getClass().getClassLoader().getResource(StringUtils.removeStart(path, "/"));
+        if (resource == null && JahiaContextLoaderListener.getServletContext() != null) {
+            try {
+                resource = JahiaContextLoaderListener.getServletContext().getResource(path.startsWith("/") ? path : '/' + path);
+            } catch (MalformedURLException e) {
+                throw new ScriptException("Invalid mail template path " + path + ": " + e.getMessage());
+            }
+        }
+        return resource;
+    }
+
+    private static List<String> getCandidates(String basePath, String extension, Locale locale) {
+        List<String> candidates = new ArrayList<>();
+        if (locale != null) {
+            if (StringUtils.isNotEmpty(locale.getCountry())) {
+                candidates.add(basePath + '_' + locale.getLanguage() + '_' + locale.getCountry() + '.' + extension);
+            }
+            candidates.add(basePath + '_' + locale.getLanguage() + '.' + extension);
+        }
+        candidates.add(basePath + '.' + extension);
+        candidates.add(basePath + '_' + Locale.ENGLISH.getLanguage() + '.' + extension);
+        return candidates;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jahia.modules.sitesettings.publication.PublicationCancelledException;
+
+/**
+ * Progress of a running publication job, updated by the job as it goes and read by the last publications view.
+ *
+ * Counters are only kept in memory, so that updating them costs no more than a volatile write: the job data is not rewritten for them.
+ */
+public class PublicationProgress {
+
+    /**
+     * The phases of a publication job.
+     */
+    public enum Phase {
+        ANALYSING, PUBLISHING
+    }
+
+    private final String siteUuid;
+
+    private final long start = System.currentTimeMillis();
+
+    private final AtomicInteger published = new AtomicInteger();
+
+    private volatile Phase phase = Phase.ANALYSING;
+
+    private volatile int analysed;
+
+    private volatile int nonPublishable;
+
+    private volatile int toPublish;
+
+    private volatile long publishingStart;
+
+    private volatile long deadline;
+
+    private volatile String cancelledBy;
+
+    /**
+     * @param siteUuid the UUID of the site being published
+     */
+    public PublicationProgress(String siteUuid) {
+        this.siteUuid = siteUuid;
+    }
+
+    /**
+     * @param deadline the time after which the job has to stop at its next checkpoint, 0 for no limit
+     */
+    public void setDeadline(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Requests the job to stop at its next checkpoint.
+     *
+     * @param user the name of the user cancelling the job
+     */
+    public void cancel(String user) {
+        cancelledBy = user;
+    }
+
+    /**
+     * Checkpoint of the job: throws if the job was cancelled or exceeded its maximum duration.
+     *
+     * @throws PublicationCancelledException if the job has to stop
+     */
+    public void checkCancelled() throws PublicationCancelledException {
+        if (cancelledBy != null) {
+            throw new PublicationCancelledException("Cancelled by " + cancelledBy);
+        }
+        if (deadline > 0 && System.currentTimeMillis() > deadline) {
+            throw new PublicationCancelledException("Maximum duration exceeded");
+        }
+    }
+
+    /**
+     * @return true if the job was requested to stop
+     */
+    public boolean isCancelled() {
+        return cancelledBy != null;
+    }
+
+    /**
+     * @param analysed the number of nodes analysed so far
+     */
+    public void setAnalysed(int analysed) {
+        this.analysed = analysed;
+    }
+
+    /**
+     * @param nonPublishable the number of nodes preventing the publication found so far, conflicting or missing mandatory properties
+     */
+    public void setNonPublishable(int nonPublishable) {
+        this.nonPublishable = nonPublishable;
+    }
+
+    /**
+     * Enters the publishing phase.
+     *
+     * @param toPublish the number of nodes to publish
+     */
+    public void startPublishing(int toPublish) {
+        this.toPublish = toPublish;
+        published.set(0);
+        publishingStart = System.currentTimeMillis();
+        phase = Phase.PUBLISHING;
+    }
+
+    /**
+     * @param count the number of nodes just published
+     */
+    public void addPublished(int count) {
+        published.addAndGet(count);
+    }
+
+    /**
+     * @return the estimated remaining time of the publishing phase in milliseconds, or -1 if it cannot be estimated yet
+     */
+    public long getEstimatedRemainingTime() {
+        int done = published.get();
+        if (phase != Phase.PUBLISHING || done == 0) {
+            return -1;
+        }
+        return (System.currentTimeMillis() - publishingStart) * Math.max(0, toPublish - done) / done;
+    }
+
+    public String getSiteUuid() {
+        return siteUuid;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public Phase getPhase() {
+        return phase;
+    }
+
+    public int getAnalysed() {
+        return analysed;
+    }
+
+    public int getNonPublishable() {
+        return nonPublishable;
+    }
+
+    public int getToPublish() {
+        return toPublish;
+    }
+
+    public int getPublished() {
+        return published.get();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the progress of the publication jobs running on this server, by job name.
+ *
+ * A job registers its progress when it starts and removes it when it completes. The progress of jobs running on another server of a
+ * cluster is not known here.
+ */
+public class PublicationProgressRegistry {
+
+    private final ConcurrentMap<String, PublicationProgress> progresses = new ConcurrentHashMap<>();
+
+    /**
+     * Registers the progress of a job starting.
+     *
+     * @param jobName name of the publication job
+     * @param siteUuid UUID of the site being published
+     * @return the progress to be updated by the job
+     */
+    public PublicationProgress start(String jobName, String siteUuid) {
+        PublicationProgress progress = new PublicationProgress(siteUuid);
+        progresses.put(jobName, progress);
+        return progress;
+    }
+
+    /**
+     * @param jobName name of a completed publication job
+     */
+    public void remove(String jobName) {
+        progresses.remove(jobName);
+    }
+
+    /**
+     * @param jobName name of a publication job
+     * @return the progress of the job if it is running on this server, null otherwise
+     */
+    public PublicationProgress get(String jobName) {
+        return progresses.get(jobName);
+    }
+
+    /**
+     * @param siteUuid UUID of a site
+     * @return the progress of the jobs of this site running on this server, by job name
+     */
+    public Map<String, PublicationProgress> getProgresses(String siteUuid) {
+        Map<String, PublicationProgress> siteProgresses = new LinkedHashMap<>();
+        for (Map.Entry<String, PublicationProgress> entry : progresses.entrySet()) {
+            if (entry.getValue().getSiteUuid().equals(siteUuid)) {
+                siteProgresses.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return siteProgresses;
+    }
+}
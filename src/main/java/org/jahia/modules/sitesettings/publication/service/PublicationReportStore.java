@@ -0,0 +1,243 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.jcr.Binary;
+import javax.jcr.NodeIterator;
+import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.jackrabbit.util.ISO8601;
+import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRNodeWrapper;
+import org.jahia.services.content.JCRSessionWrapper;
+import org.jahia.services.content.JCRTemplate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Stores the full report of the nodes preventing a publication outside of the scheduler, as one compressed binary per publication job, so
+ * that the job data only has to hold their number and a short sample.
+ *
+ * Reports are written by the job when its publication is aborted, read back only when a user asks for the details of the job, and deleted
+ * once older than the configured maximum age. They are stored in the edit workspace, in unpublished nodes outside of the sites named after
+ * their job, so that every server of a cluster can read them.
+ */
+public class PublicationReportStore {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublicationReportStore.class);
+
+    private static final Pattern JOB_NAME_PATTERN = Pattern.compile("[\\w.-]+");
+
+    private static final String REPORTS_PARENT_PATH = "/settings";
+
+    private static final String REPORTS_NODE = "publicationReports";
+
+    private static final String REPORTS_PATH = REPORTS_PARENT_PATH + "/" + REPORTS_NODE;
+
+    private static final String REPORT_PROPERTY = "report";
+
+    private static final String EXPIRED_REPORTS_QUERY = "SELECT * FROM [jnt:publicationReport] AS r WHERE ISCHILDNODE(r, '" + REPORTS_PATH + "')"
+            + " AND r.[jcr:created] < CAST('%s' AS DATE)";
+
+    private static final char SEPARATOR = '\t';
+
+    private int maxAgeDays;
+
+    /**
+     * Writes the report of a publication job, line by line, replacing any previous report of the same job.
+     *
+     * @param jobName name of the publication job
+     * @param reportedPaths the reported node paths, by kind of issue
+     * @throws IOException in case the report cannot be compressed
+     * @throws RepositoryException in case the report cannot be stored
+     */
+    public void write(final String jobName, Map<String, ? extends Collection<String>> reportedPaths) throws IOException, RepositoryException {
+        checkJobName(jobName);
+        // the report is compressed to a temporary file first, so that large reports are streamed to the repository
+        final File tempFile = File.createTempFile("publication-report-", ".txt.gz");
+        try {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tempFile)), StandardCharsets.UTF_8))) {
+                for (Map.Entry<String, ? extends Collection<String>> entry : reportedPaths.entrySet()) {
+                    for (String path : entry.getValue()) {
+                        writer.write(entry.getKey());
+                        writer.write(SEPARATOR);
+                        writer.write(path);
+                        writer.write('\n');
+                    }
+                }
+            }
+            JCRTemplate.getInstance().doExecuteWithSystemSession(new JCRCallback<Object>() {
+
+                @Override
+                public Object doInJCR(JCRSessionWrapper session) throws RepositoryException {
+                    purge(session);
+                    JCRNodeWrapper reports = getReportsNode(session);
+                    if (reports.hasNode(jobName)) {
+                        reports.getNode(jobName).remove();
+                    }
+                    JCRNodeWrapper report = reports.addNode(jobName, "jnt:publicationReport");
+                    try (InputStream stream = new FileInputStream(tempFile)) {
+                        Binary binary = session.getValueFactory().createBinary(stream);
+                        try {
+                            report.setProperty(REPORT_PROPERTY, binary);
+                        } finally {
+                            binary.dispose();
+                        }
+                    } catch (IOException e) {
+                        throw new RepositoryException("Unable to read the compressed report of publication job " + jobName, e);
+                    }
+                    session.save();
+                    return null;
+                }
+            });
+        } finally {
+            FileUtils.deleteQuietly(tempFile);
+        }
+    }
+
+    /**
+     * Reads the report of a publication job.
+     *
+     * @param jobName name of the publication job
+     * @return the reported node paths by kind of issue, or null if there is no report for the job
+     * @throws RepositoryException in case the report cannot be read
+     */
+    public Map<String, List<String>> read(final String jobName) throws RepositoryException {
+        checkJobName(jobName);
+        return JCRTemplate.getInstance().doExecuteWithSystemSession(new JCRCallback<Map<String, List<String>>>() {
+
+            @Override
+            public Map<String, List<String>> doInJCR(JCRSessionWrapper session) throws RepositoryException {
+                String reportPath = REPORTS_PATH + "/" + jobName;
+                if (!session.nodeExists(reportPath)) {
+                    return null;
+                }
+                Binary binary = session.getNode(reportPath).getProperty(REPORT_PROPERTY).getBinary();
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(binary.getStream()), StandardCharsets.UTF_8))) {
+                    return read(reader);
+                } catch (IOException e) {
+                    throw new RepositoryException("Unable to read the report of publication job " + jobName, e);
+                } finally {
+                    binary.dispose();
+                }
+            }
+        });
+    }
+
+    private static Map<String, List<String>> read(BufferedReader reader) throws IOException {
+        Map<String, List<String>> reportedPaths = new LinkedHashMap<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            int separatorIndex = line.indexOf(SEPARATOR);
+            if (separatorIndex < 0) {
+                continue;
+            }
+            String kind = line.substring(0, separatorIndex);
+            List<String> paths = reportedPaths.get(kind);
+            if (paths == null) {
+                paths = new ArrayList<>();
+                reportedPaths.put(kind, paths);
+            }
+            paths.add(line.substring(separatorIndex + 1));
+        }
+        return reportedPaths;
+    }
+
+    private static void checkJobName(String jobName) {
+        if (!JOB_NAME_PATTERN.matcher(jobName).matches()) {
+            throw new IllegalArgumentException("Invalid publication job name: " + jobName);
+        }
+    }
+
+    private static JCRNodeWrapper getReportsNode(JCRSessionWrapper session) throws RepositoryException {
+        if (session.nodeExists(REPORTS_PATH)) {
+            return session.getNode(REPORTS_PATH);
+        }
+        return session.getNode(REPORTS_PARENT_PATH).addNode(REPORTS_NODE, "jnt:publicationReports");
+    }
+
+    private void purge(JCRSessionWrapper session) throws RepositoryException {
+        if (maxAgeDays <= 0 || !session.nodeExists(REPORTS_PATH)) {
+            return;
+        }
+        Calendar oldest = Calendar.getInstance();
+        oldest.setTimeInMillis(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(maxAgeDays));
+        Query query = session.getWorkspace().getQueryManager().createQuery(String.format(EXPIRED_REPORTS_QUERY, ISO8601.format(oldest)), Query.JCR_SQL2);
+        for (NodeIterator it = query.execute().getNodes(); it.hasNext(); ) {
+            JCRNodeWrapper report = (JCRNodeWrapper) it.nextNode();
+            LOGGER.debug("Deleting expired publication report {}", report.getName());
+            report.remove();
+        }
+    }
+
+    /**
+     * @param maxAgeDays the number of days after which reports are deleted, 0 to keep them forever
+     */
+    public void setMaxAgeDays(int maxAgeDays) {
+        this.maxAgeDays = maxAgeDays;
+    }
+}
@@ -43,15 +43,22 @@
  */
 package org.jahia.modules.sitesettings.publication.service;
 
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
-import javax.jcr.RepositoryException;
 import javax.script.ScriptException;
 
 import org.apache.commons.lang.StringUtils;
@@ -63,68 +70,303 @@ import org.jahia.services.preferences.user.UserPreferencesHelper;
 import org.jahia.services.scheduler.BackgroundJob;
 import org.jahia.services.usermanager.JahiaUserManagerService;
 import org.jahia.utils.i18n.Messages;
-import org.jahia.utils.i18n.ResourceBundles;
 import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.SchedulerException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Sends email notifications on SiteAdminPublicationJob completion.
+ *
+ * Completed jobs are only queued by the job itself: the emails are built and sent by a dedicated sender thread, so that Quartz worker
+ * threads are not held by the mail service. The jobs scheduled by the same publication request are reported together in a single digest
+ * email, sent once none of them is left to complete or after a maximum waiting time. Failures to send an email are retried with an
+ * exponential backoff. Emails are rendered by the PublicationNotificationRenderer, which compiles each template once per locale.
  */
 public class PublicationResultEmailNotificationService {
 
-    private static final SimpleDateFormat NOTIFICATION_DATE_TIME_FORMAT = new SimpleDateFormat("MM-dd-yyyy HH:mm:ss");
+    /**
+     * The completed jobs of a publication request, waiting to be notified.
+     */
+    private static class Digest {
+
+        private final List<Map<String, Object>> jobs = new ArrayList<>();
+        private final Set<String> jobNames = new HashSet<>();
+        private final long created = System.currentTimeMillis();
+        private boolean ready;
+        private int attempts;
+        private long nextAttempt;
+    }
+
     private static final Logger LOGGER = LoggerFactory.getLogger(PublicationResultEmailNotificationService.class);
 
+    private static final String JOB_NAME = "jobName";
+    private static final int QUEUE_CAPACITY = 10000;
+    private static final long POLL_INTERVAL = 5000;
+
+    private final BlockingQueue<Map<String, Object>> queue = new LinkedBlockingQueue<>(QUEUE_CAPACITY);
+
     private JahiaUserManagerService userManagerService;
     private MailService mailService;
+    private PublicationNotificationRenderer renderer;
+    private PublicationJobIndex publicationJobIndex;
+    private PublicationMetrics publicationMetrics;
     private String emailTemplate;
+    private String digestEmailTemplate;
+    private long digestMaxWait;
+    private int maxAttempts;
+    private long retryDelay;
+
+    private volatile boolean running;
+    private Thread sender;
+
+    /**
+     * Starts the sender thread.
+     */
+    public void start() {
+        running = true;
+        sender = new Thread(new Runnable() {
+
+            @Override
+            public void run() {
+                processNotifications();
+            }
+        }, "site-settings-publication-notifications");
+        sender.setDaemon(true);
+        sender.start();
+    }
 
     /**
-     * Send email notification about SiteAdminPublicationJob completion.
+     * Stops the sender thread, making a last attempt to send the pending notifications.
+     */
+    public void stop() throws InterruptedException {
+        running = false;
+        if (sender != null) {
+            sender.interrupt();
+            sender.join(TimeUnit.SECONDS.toMillis(30));
+        }
+    }
+
+    /**
+     * Queue an email notification about SiteAdminPublicationJob completion.
      *
+     * @param jobName Job name
      * @param jobDataMap Job details
      */
     @SuppressWarnings("unchecked")
-    public void notifyJobCompleted(JobDataMap jobDataMap) {
+    public void notifyJobCompleted(String jobName, JobDataMap jobDataMap) {
 
         if (!mailService.isEnabled()) {
             LOGGER.debug("Will not send publication result notification as the mail service is disabled");
             return;
         }
 
-        JCRUserNode user = userManagerService.lookupUserByPath((String) jobDataMap.get(BackgroundJob.JOB_USERKEY));
+        // the job data keeps on changing once the job is completed, take a snapshot of it
+        Map<String, Object> jobData = new HashMap<>(jobDataMap);
+        jobData.put(JOB_NAME, jobName);
+        if (!queue.offer(jobData)) {
+            LOGGER.warn("Too many pending publication result notifications, the one of job {} is dropped", jobName);
+        }
+
+        // the requests coalesced into the job are notified along with the other jobs of their own request
+        for (Map<String, Object> request : SiteAdminPublicationJob.getCoalescedRequests(jobData)) {
+            Map<String, Object> requestJobData = new HashMap<>(jobData);
+            requestJobData.putAll(request);
+            if (!queue.offer(requestJobData)) {
+                LOGGER.warn("Too many pending publication result notifications, the one of job {} for request {} is dropped", jobName,
+                        request.get(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID));
+            }
+        }
+    }
+
+    private void processNotifications() {
+        Map<String, Digest> digests = new LinkedHashMap<>();
+        while (running) {
+            try {
+                for (Map<String, Object> jobData = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS); jobData != null; jobData = queue.poll()) {
+                    addToDigest(digests, jobData);
+                }
+            } catch (InterruptedException e) {
+                // stopping
+                Thread.currentThread().interrupt();
+                break;
+            }
+            sendDigests(digests, false);
+        }
+        for (Map<String, Object> jobData = queue.poll(); jobData != null; jobData = queue.poll()) {
+            addToDigest(digests, jobData);
+        }
+        sendDigests(digests, true);
+    }
+
+    private static void addToDigest(Map<String, Digest> digests, Map<String, Object> jobData) {
+        String requestId = (String) jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID);
+        String key = (requestId != null ? requestId : (String) jobData.get(JOB_NAME));
+        Digest digest = digests.get(key);
+        if (digest == null) {
+            digest = new Digest();
+            digest.ready = (requestId == null);
+            digests.put(key, digest);
+        }
+        digest.jobs.add(jobData);
+        digest.jobNames.add((String) jobData.get(JOB_NAME));
+    }
+
+    private void sendDigests(Map<String, Digest> digests, boolean lastAttempt) {
+        long now = System.currentTimeMillis();
+        for (Iterator<Digest> it = digests.values().iterator(); it.hasNext(); ) {
+            Digest digest = it.next();
+            if (!lastAttempt && (digest.nextAttempt > now || !isReady(digest, now))) {
+                continue;
+            }
+            try {
+                send(digest.jobs);
+                it.remove();
+            } catch (Exception e) {
+                digest.attempts++;
+                if (lastAttempt || digest.attempts >= maxAttempts) {
+                    LOGGER.error("Unable to send the publication result notification of jobs " + digest.jobNames + ", giving up", e);
+                    it.remove();
+                } else {
+                    digest.nextAttempt = now + (retryDelay << (digest.attempts - 1));
+                    LOGGER.warn("Unable to send the publication result notification of jobs {}, will retry in {} ms: {}", digest.jobNames,
+                            digest.nextAttempt - now, e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells whether all the jobs of the publication request of a digest are completed, or the digest waited long enough.
+     */
+    private boolean isReady(Digest digest, long now) {
+        if (digest.ready || now - digest.created >= digestMaxWait) {
+            digest.ready = true;
+            return true;
+        }
+        Map<String, Object> jobData = digest.jobs.get(0);
+        Object requestId = jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID);
+        try {
+            for (JobDetail job : publicationJobIndex.getJobs((String) jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_SITE_UUID))) {
+                JobDataMap jobDataMap = job.getJobDataMap();
+                if (requestId.equals(jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID)) && !digest.jobNames.contains(job.getName())
+                        && !jobDataMap.containsKey(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT)) {
+                    return false;
+                }
+            }
+        } catch (SchedulerException e) {
+            LOGGER.warn("Unable to check the completion of the publication jobs of request {}", requestId, e);
+            return false;
+        }
+        digest.ready = true;
+        return true;
+    }
+
+    private void send(List<Map<String, Object>> jobs) {
+
+        Map<String, Object> firstJob = jobs.get(0);
+        JCRUserNode user = userManagerService.lookupUserByPath((String) firstJob.get(BackgroundJob.JOB_USERKEY));
+        if (user == null) {
+            LOGGER.warn("Unable to send mail for user [{}] because it does not exist anymore", firstJob.get(BackgroundJob.JOB_USERKEY));
+            return;
+        }
         String mailTo = UserPreferencesHelper.getEmailAddress(user);
         if (StringUtils.isEmpty(mailTo)) {
             LOGGER.warn("Unable to send mail for user [{}] because its address is not configured", user.getUserKey());
             return;
         }
 
+        Locale locale = (Locale) firstJob.get(SiteAdminPublicationJob.UI_LOCALE);
+        ResourceBundle resourceBundle = renderer.getResourceBundle(locale);
+        String template;
+        Map<String, Object> bindings;
+        if (jobs.size() == 1) {
+            template = emailTemplate;
+            bindings = getBindings(firstJob, resourceBundle, renderer);
+        } else {
+            // a single digest for all the jobs of the publication request
+            template = digestEmailTemplate;
+            List<Map<String, Object>> jobBindings = new ArrayList<>(jobs.size());
+            Set<Object> languages = new LinkedHashSet<>();
+            for (Map<String, Object> job : jobs) {
+                jobBindings.add(getBindings(job, resourceBundle, renderer));
+                languages.add(job.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE));
+            }
+            bindings = new HashMap<>();
+            bindings.put("jobs", jobBindings);
+            bindings.put("subject", Messages.getWithArgs(resourceBundle, "siteSettingsPublication.publicationJobs.notification.subject.digest",
+                    firstJob.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH), StringUtils.join(languages, ", ")));
+        }
+
+        long start = System.nanoTime();
+        String subject;
+        String body;
+        try {
+            // a custom template may come with its own subject template, the subject resolved from the bundle is used otherwise
+            subject = renderer.renderSubject(template, locale, bindings);
+            body = renderer.render(template, locale, bindings);
+        } catch (ScriptException e) {
+            throw new JahiaRuntimeException(e);
+        }
+        if (subject == null) {
+            subject = (String) bindings.get("subject");
+        }
+        if (!mailService.sendHtmlMessage(mailService.getSettings().getFrom(), mailTo, null, null, subject, body)) {
+            throw new JahiaRuntimeException("The mail service failed to send the notification to " + mailTo);
+        }
+        publicationMetrics.recordNotification((String) firstJob.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH),
+                (String) firstJob.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE), System.nanoTime() - start);
+    }
+
+    private static Map<String, Object> getBindings(Map<String, Object> jobData, ResourceBundle resourceBundle, PublicationNotificationRenderer renderer) {
+
         // Build subject.
-        Locale locale = (Locale) jobDataMap.get(SiteAdminPublicationJob.UI_LOCALE);
-        ResourceBundle resourceBundle = ResourceBundles.get("resources.SiteSettings-Publication", locale);
-        String publicationResult = (String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT);
+        String publicationResult = (String) jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT);
         String subjectKey = "siteSettingsPublication.publicationJobs.notification.subject." + publicationResult;
 
         // Fill bindings with custom job detail infos.
         Map<String, Object> bindings = new HashMap<>();
-        List<?> conflicts = (List<?>) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_CONFLICTS);
-        List<?> missingProperties = (List<?>) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_MISSING_PROPERTY);
-        bindings.put("conflictSize", (conflicts == null ? 0 : conflicts.size()));
-        bindings.put("missingPropertySize", (missingProperties == null ? 0 : missingProperties.size()));
-        bindings.put("beginDate", NOTIFICATION_DATE_TIME_FORMAT.format(new Date(Long.parseLong((String) jobDataMap.get(BackgroundJob.JOB_BEGIN)))));
-        String jobEnd = (String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_END);
-        if (StringUtils.isNotEmpty(jobEnd)) {
-            bindings.put("endDate", NOTIFICATION_DATE_TIME_FORMAT.format(new Date(Long.parseLong(jobEnd))));
-        }
-        bindings.put("subject", Messages.getWithArgs(resourceBundle, subjectKey, jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH), jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE)));
-        bindings.putAll(jobDataMap);
+        List<?> conflicts = (List<?>) jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_CONFLICTS);
+        List<?> missingProperties = (List<?>) jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_MISSING_PROPERTY);
+        int conflictSize = getCount(jobData, SiteAdminPublicationJob.PUBLICATION_JOB_CONFLICT_COUNT, conflicts);
+        int missingPropertySize = getCount(jobData, SiteAdminPublicationJob.PUBLICATION_JOB_MISSING_PROPERTY_COUNT, missingProperties);
+        bindings.put("conflictSize", conflictSize);
+        bindings.put("missingPropertySize", missingPropertySize);
+        // the job data only holds a sample of the reported nodes
+        bindings.put("conflictOthers", conflictSize - (conflicts == null ? 0 : conflicts.size()));
+        bindings.put("missingPropertyOthers", missingPropertySize - (missingProperties == null ? 0 : missingProperties.size()));
+        bindings.put("beginDate", renderer.formatDate((String) jobData.get(BackgroundJob.JOB_BEGIN)));
+        String endDate = renderer.formatDate((String) jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_END));
+        if (endDate != null) {
+            bindings.put("endDate", endDate);
+        }
+        bindings.put("subject", Messages.getWithArgs(resourceBundle, subjectKey, jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH), jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE)));
+        bindings.putAll(jobData);
+        // a partially executed job tells which of its languages were published
+        Object languageResults = jobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE_RESULTS);
+        if (languageResults instanceof Map) {
+            Set<String> publishedLanguages = new TreeSet<>();
+            Set<String> blockedLanguages = new TreeSet<>();
+            for (Map.Entry<?, ?> languageResult : ((Map<?, ?>) languageResults).entrySet()) {
+                if (SiteAdminPublicationJob.SUCCESS.equals(languageResult.getValue())) {
+                    publishedLanguages.add((String) languageResult.getKey());
+                } else if (SiteAdminPublicationJob.ERROR.equals(languageResult.getValue())) {
+                    blockedLanguages.add((String) languageResult.getKey());
+                }
+            }
+            bindings.put("publishedLanguages", StringUtils.join(publishedLanguages, ", "));
+            bindings.put("blockedLanguages", StringUtils.join(blockedLanguages, ", "));
+        }
+        return bindings;
+    }
 
-        try {
-            mailService.sendMessageWithTemplate(emailTemplate, bindings, mailTo, mailService.getSettings().getFrom(), null, null, locale, "Site Settings - Publication");
-        } catch (RepositoryException | ScriptException e) {
-            throw new JahiaRuntimeException(e);
+    private static int getCount(Map<String, Object> jobData, String countKey, List<?> sample) {
+        String count = (String) jobData.get(countKey);
+        if (StringUtils.isNotEmpty(count)) {
+            return Integer.parseInt(count);
         }
+        return (sample == null ? 0 : sample.size());
     }
 
     /**
@@ -141,10 +383,59 @@ public class PublicationResultEmailNotificationService {
         this.mailService = mailService;
     }
 
+    /**
+     * @param renderer Renderer of the notification emails
+     */
+    public void setRenderer(PublicationNotificationRenderer renderer) {
+        this.renderer = renderer;
+    }
+
+    /**
+     * @param publicationJobIndex Index of the publication jobs, used to know whether the jobs of a publication request are completed
+     */
+    public void setPublicationJobIndex(PublicationJobIndex publicationJobIndex) {
+        this.publicationJobIndex = publicationJobIndex;
+    }
+
+    /**
+     * @param publicationMetrics Metrics of the publication jobs, recording the time spent sending notifications
+     */
+    public void setPublicationMetrics(PublicationMetrics publicationMetrics) {
+        this.publicationMetrics = publicationMetrics;
+    }
+
     /**
      * @param emailTemplate Location of the mail template to be used for composing notification emails
      */
     public void setEmailTemplate(String emailTemplate) {
         this.emailTemplate = emailTemplate;
     }
+
+    /**
+     * @param digestEmailTemplate Location of the mail template to be used for notifying several jobs of the same publication request
+     */
+    public void setDigestEmailTemplate(String digestEmailTemplate) {
+        this.digestEmailTemplate = digestEmailTemplate;
+    }
+
+    /**
+     * @param digestMaxWait Maximum time in milliseconds to wait for all the jobs of a publication request before notifying the completed ones
+     */
+    public void setDigestMaxWait(long digestMaxWait) {
+        this.digestMaxWait = digestMaxWait;
+    }
+
+    /**
+     * @param maxAttempts Maximum number of attempts to send a notification
+     */
+    public void setMaxAttempts(int maxAttempts) {
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param retryDelay Delay in milliseconds before the first retry of a failed notification, doubled for each following one
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
 }
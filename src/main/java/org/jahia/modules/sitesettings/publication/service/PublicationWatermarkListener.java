@@ -0,0 +1,108 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+
+import org.jahia.services.content.DefaultEventListener;
+import org.jahia.services.content.ExternalEventListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records in the {@link PublicationWatermarkService} the changes of the sites in the edit workspace which an incremental publication cannot
+ * find from the modification date of the nodes: removed and moved nodes, ACL changes and mixin changes, e.g. nodes marked for deletion.
+ * The events of the other cluster nodes are recorded as well, the publication jobs running on one of them only.
+ */
+public class PublicationWatermarkListener extends DefaultEventListener implements ExternalEventListener {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublicationWatermarkListener.class);
+
+    private static final String SITES_PATH = "/sites/";
+
+    private PublicationWatermarkService publicationWatermarkService;
+
+    @Override
+    public int getEventTypes() {
+        return Event.NODE_ADDED | Event.NODE_REMOVED | Event.NODE_MOVED | Event.PROPERTY_ADDED | Event.PROPERTY_CHANGED | Event.PROPERTY_REMOVED;
+    }
+
+    @Override
+    public void onEvent(EventIterator events) {
+        long now = System.currentTimeMillis();
+        while (events.hasNext()) {
+            Event event = events.nextEvent();
+            String path;
+            try {
+                path = event.getPath();
+            } catch (RepositoryException e) {
+                // without knowing which site changed, the next incremental publication of every site could miss the change
+                LOGGER.warn("Unable to read the JCR events, the next incremental publications will analyse the whole sites", e);
+                publicationWatermarkService.recordStructuralChange(null, now);
+                return;
+            }
+            if (path.startsWith(SITES_PATH) && isStructural(event.getType(), path)) {
+                publicationWatermarkService.recordStructuralChange(getSitePath(path), now);
+            }
+        }
+    }
+
+    private static boolean isStructural(int type, String path) {
+        return type == Event.NODE_REMOVED || type == Event.NODE_MOVED || path.contains("/j:acl") || path.endsWith("/jcr:mixinTypes");
+    }
+
+    private static String getSitePath(String path) {
+        int end = path.indexOf('/', SITES_PATH.length());
+        return end < 0 ? path : path.substring(0, end);
+    }
+
+    /**
+     * @param publicationWatermarkService the service recording the changes
+     */
+    public void setPublicationWatermarkService(PublicationWatermarkService publicationWatermarkService) {
+        this.publicationWatermarkService = publicationWatermarkService;
+    }
+}
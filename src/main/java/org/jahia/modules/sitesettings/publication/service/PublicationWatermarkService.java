@@ -0,0 +1,205 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.SchedulerException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps track, per site and language, of the time the last successful entire site publication started analysing the site: every change
+ * made before that time is known to be live, so that an incremental publication only has to look at the nodes modified after it.
+ *
+ * Watermarks are kept in memory and, when unknown, looked up in the history of the publication jobs, where each successful entire site
+ * publication records its own.
+ *
+ * Removed and moved nodes, as well as ACL and mixin changes, do not show in the modification date of the nodes still in the site: the
+ * {@link PublicationWatermarkListener} records when a site last had such a change, and an incremental publication is only possible when
+ * none happened since the watermark, while the changes were being recorded.
+ */
+public class PublicationWatermarkService {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PublicationWatermarkService.class);
+
+    private final Map<String, Long> watermarks = new ConcurrentHashMap<>();
+
+    private final Map<String, Long> structuralChanges = new ConcurrentHashMap<>();
+
+    private final long recordingSince = System.currentTimeMillis();
+
+    private long unknownSiteChange;
+
+    private PublicationJobIndex publicationJobIndex;
+
+    /**
+     * Returns the watermark of the given site and language.
+     *
+     * @param siteUuid UUID of the site
+     * @param language code of the language
+     * @return the watermark timestamp, or null when no successful entire site publication is known
+     */
+    public Long getWatermark(String siteUuid, String language) {
+        String key = getKey(siteUuid, language);
+        Long watermark = watermarks.get(key);
+        if (watermark == null) {
+            watermark = findWatermarkInJobHistory(siteUuid, language);
+            if (watermark != null) {
+                updateWatermark(key, watermark);
+            }
+        }
+        return watermark;
+    }
+
+    /**
+     * Returns the oldest watermark of the given site among the given languages.
+     *
+     * @param siteUuid UUID of the site
+     * @param languages codes of the languages
+     * @return the oldest watermark timestamp, or null if one of the languages has none
+     */
+    public Long getWatermark(String siteUuid, Collection<String> languages) {
+        Long oldest = null;
+        for (String language : languages) {
+            Long watermark = getWatermark(siteUuid, language);
+            if (watermark == null) {
+                return null;
+            }
+            oldest = (oldest == null ? watermark : Math.min(oldest, watermark));
+        }
+        return oldest;
+    }
+
+    /**
+     * Records the watermark of a successful entire site publication.
+     *
+     * @param siteUuid UUID of the site
+     * @param language code of the language
+     * @param watermark the time the publication started analysing the site
+     */
+    public void setWatermark(String siteUuid, String language, long watermark) {
+        updateWatermark(getKey(siteUuid, language), watermark);
+    }
+
+    /**
+     * Records a change of a site which is not visible in the modification date of its nodes, e.g. a removed or moved node.
+     *
+     * @param sitePath the path of the site, null if the changed site is not known
+     * @param time the time of the change
+     */
+    public synchronized void recordStructuralChange(String sitePath, long time) {
+        if (sitePath == null) {
+            unknownSiteChange = Math.max(unknownSiteChange, time);
+            return;
+        }
+        Long previous = structuralChanges.get(sitePath);
+        if (previous == null || previous < time) {
+            structuralChanges.put(sitePath, time);
+        }
+    }
+
+    /**
+     * Tells whether the nodes modified after the given time are all the changes of a site since then, i.e. whether no change invisible in
+     * the modification date of the nodes happened since, or could have happened before the changes were recorded.
+     *
+     * @param sitePath the path of the site
+     * @param since the watermark of the site
+     * @return true if an incremental publication since that time publishes all the changes
+     */
+    public synchronized boolean isIncrementalPossible(String sitePath, long since) {
+        Long structuralChange = structuralChanges.get(sitePath);
+        return since >= recordingSince && unknownSiteChange < since && (structuralChange == null || structuralChange < since);
+    }
+
+    private synchronized void updateWatermark(String key, long watermark) {
+        Long previous = watermarks.get(key);
+        if (previous == null || previous < watermark) {
+            watermarks.put(key, watermark);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Long findWatermarkInJobHistory(String siteUuid, String language) {
+        List<JobDetail> jobs;
+        try {
+            jobs = publicationJobIndex.getJobs(siteUuid);
+        } catch (SchedulerException e) {
+            LOGGER.warn("Unable to read the publication job history", e);
+            return null;
+        }
+        Long watermark = null;
+        for (JobDetail job : jobs) {
+            JobDataMap jobDataMap = job.getJobDataMap();
+            String jobWatermark = (String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_WATERMARK);
+            if (StringUtils.isEmpty(jobWatermark)) {
+                continue;
+            }
+            Collection<String> jobLanguages = (Collection<String>) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGES);
+            if (language.equals(jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE)) || jobLanguages != null && jobLanguages.contains(language)) {
+                long value = Long.parseLong(jobWatermark);
+                watermark = (watermark == null ? value : Math.max(watermark, value));
+            }
+        }
+        return watermark;
+    }
+
+    private static String getKey(String siteUuid, String language) {
+        return siteUuid + '/' + language;
+    }
+
+    /**
+     * @param publicationJobIndex the index of the publication jobs by site
+     */
+    public void setPublicationJobIndex(PublicationJobIndex publicationJobIndex) {
+        this.publicationJobIndex = publicationJobIndex;
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.webflow;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.time.DurationFormatUtils;
+
+/**
+ * Model object for the estimate of a publication job, computed with queries instead of the analysis of the publication info of the
+ * published trees.
+ */
+public class PublicationEstimate implements Serializable {
+
+    private static final long serialVersionUID = -2871645201958343670L;
+
+    private String language;
+
+    private int nodeCount;
+
+    private boolean nodeCountLowerBound;
+
+    private int conflictCount;
+
+    private long estimatedDuration;
+
+    /**
+     * Initializes an instance of this model object.
+     *
+     * @param language the language or comma separated languages the job would publish
+     * @param nodeCount the number of nodes to publish
+     * @param nodeCountLowerBound whether the nodes were not all counted, the actual count possibly being larger
+     * @param conflictCount the number of nodes never published whose path is used by another node in live, extrapolated from a sample
+     * @param estimatedDuration the estimated duration of the job in milliseconds, -1 if unknown
+     */
+    public PublicationEstimate(String language, int nodeCount, boolean nodeCountLowerBound, int conflictCount, long estimatedDuration) {
+        this.language = language;
+        this.nodeCount = nodeCount;
+        this.nodeCountLowerBound = nodeCountLowerBound;
+        this.conflictCount = conflictCount;
+        this.estimatedDuration = estimatedDuration;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public boolean isNodeCountLowerBound() {
+        return nodeCountLowerBound;
+    }
+
+    public int getConflictCount() {
+        return conflictCount;
+    }
+
+    public long getEstimatedDuration() {
+        return estimatedDuration;
+    }
+
+    /**
+     * @return the estimated duration formatted as hours, minutes and seconds, or null if it is unknown
+     */
+    public String getFormattedDuration() {
+        return estimatedDuration >= 0 ? DurationFormatUtils.formatDuration(estimatedDuration, "HH:mm:ss") : null;
+    }
+}
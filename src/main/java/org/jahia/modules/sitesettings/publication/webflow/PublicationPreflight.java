@@ -0,0 +1,106 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.webflow;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Model object for the preflight check of a publication job, i.e. the outcome its analysis would have if the job was started now.
+ */
+public class PublicationPreflight implements Serializable {
+
+    private static final long serialVersionUID = 3520861488218311620L;
+
+    private String language;
+
+    private int analysedCount;
+
+    private int publishableCount;
+
+    private List<String> conflicts;
+
+    private List<String> missingProperties;
+
+    /**
+     * Initializes an instance of this model object.
+     *
+     * @param language the language or comma separated languages the job would publish
+     * @param analysedCount the number of analysed nodes
+     * @param publishableCount the number of nodes needing publication
+     * @param conflicts the paths of the nodes conflicting with live nodes
+     * @param missingProperties the paths of the nodes missing mandatory properties
+     */
+    public PublicationPreflight(String language, int analysedCount, int publishableCount, List<String> conflicts, List<String> missingProperties) {
+        this.language = language;
+        this.analysedCount = analysedCount;
+        this.publishableCount = publishableCount;
+        this.conflicts = conflicts;
+        this.missingProperties = missingProperties;
+    }
+
+    public String getLanguage() {
+        return language;
+    }
+
+    public int getAnalysedCount() {
+        return analysedCount;
+    }
+
+    public int getPublishableCount() {
+        return publishableCount;
+    }
+
+    public List<String> getConflicts() {
+        return conflicts;
+    }
+
+    public List<String> getMissingProperties() {
+        return missingProperties;
+    }
+
+    public boolean isBlocked() {
+        return !conflicts.isEmpty() || !missingProperties.isEmpty();
+    }
+}
@@ -58,7 +58,15 @@ public class SitePublication implements Serializable {
     public enum Scope {
 
         ENTIRE_SITE,
-        SITE_SUBNODE
+        SITE_SUBNODE,
+        SITE_SUBNODES
+    }
+
+    public enum Timing {
+
+        NOW,
+        AT,
+        OFF_PEAK
     }
 
     private static final long serialVersionUID = -4565197823923232164L;
@@ -73,10 +81,18 @@ public class SitePublication implements Serializable {
 
     private String nodePath;
 
+    private String nodePaths;
+
     private Scope scope;
 
     private List<String> siteLanguages = Collections.emptyList();
 
+    private Timing timing = Timing.NOW;
+
+    private String scheduledTime;
+
+    private Integer timeZoneOffset;
+
     /**
      * Initializes an instance of this model object.
      *
@@ -109,10 +125,33 @@ public class SitePublication implements Serializable {
         return nodePath;
     }
 
+    /**
+     * @return the paths of the nodes to publish in bulk, one per line
+     */
+    public String getNodePaths() {
+        return nodePaths;
+    }
+
     public Scope getScope() {
         return scope;
     }
 
+    public Timing getTiming() {
+        return timing;
+    }
+
+    public String getScheduledTime() {
+        return scheduledTime;
+    }
+
+    /**
+     * @return the offset of the time zone of the user's browser in minutes, as returned by the JavaScript Date.getTimezoneOffset(), i.e.
+     *         positive behind UTC, or null if unknown
+     */
+    public Integer getTimeZoneOffset() {
+        return timeZoneOffset;
+    }
+
     public List<String> getSiteLanguages() {
         return siteLanguages;
     }
@@ -125,6 +164,22 @@ public class SitePublication implements Serializable {
         this.nodePath = nodePath != null ? nodePath.trim() : nodePath;
     }
 
+    public void setNodePaths(String nodePaths) {
+        this.nodePaths = nodePaths;
+    }
+
+    public void setTiming(Timing timing) {
+        this.timing = timing != null ? timing : Timing.NOW;
+    }
+
+    public void setScheduledTime(String scheduledTime) {
+        this.scheduledTime = scheduledTime != null ? scheduledTime.trim() : scheduledTime;
+    }
+
+    public void setTimeZoneOffset(Integer timeZoneOffset) {
+        this.timeZoneOffset = timeZoneOffset;
+    }
+
     public void setScope(Scope scope) {
         this.scope = scope;
     }
@@ -45,31 +45,66 @@ package org.jahia.modules.sitesettings.publication.webflow;
 
 import java.io.Serializable;
 import java.text.Collator;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.SimpleTimeZone;
+import java.util.TimeZone;
+import java.util.TreeSet;
+import java.util.UUID;
 
+import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
+import javax.jcr.query.Query;
 
-import org.apache.commons.collections.CollectionUtils;
-import org.apache.commons.collections.Predicate;
+import org.apache.commons.lang.StringUtils;
+import org.apache.jackrabbit.util.ISO8601;
+import org.jahia.api.Constants;
 import org.jahia.exceptions.JahiaRuntimeException;
+import org.jahia.modules.sitesettings.publication.PublicationAnalysis;
+import org.jahia.modules.sitesettings.publication.PublicationJobSettings;
 import org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob;
+import org.jahia.modules.sitesettings.publication.service.PublicationInfoCache;
+import org.jahia.modules.sitesettings.publication.service.PublicationJobAdmission;
+import org.jahia.modules.sitesettings.publication.service.PublicationJobIndex;
+import org.jahia.modules.sitesettings.publication.service.PublicationProgress;
+import org.jahia.modules.sitesettings.publication.service.PublicationProgressRegistry;
+import org.jahia.modules.sitesettings.publication.service.PublicationWatermarkService;
 import org.jahia.services.content.JCRCallback;
+import org.jahia.services.content.JCRContentUtils;
+import org.jahia.services.content.JCRNodeWrapper;
 import org.jahia.services.content.JCRSessionWrapper;
 import org.jahia.services.content.JCRTemplate;
+import org.jahia.services.content.PublicationInfo;
+import org.jahia.services.content.PublicationInfoNode;
 import org.jahia.services.content.decorator.JCRSiteNode;
 import org.jahia.services.render.RenderContext;
 import org.jahia.services.scheduler.BackgroundJob;
 import org.jahia.services.scheduler.SchedulerService;
 import org.jahia.utils.LanguageCodeConverters;
+import org.quartz.CronExpression;
 import org.quartz.JobDataMap;
 import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.Scheduler;
 import org.quartz.SchedulerException;
+import org.quartz.SimpleTrigger;
+import org.quartz.Trigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -113,9 +148,107 @@ public class SitePublicationFlowHandler implements Serializable {
 
     private static final long serialVersionUID = -7862783658070459239L;
 
+    /**
+     * Lock preventing concurrent publication requests from coalescing with the same pending jobs.
+     */
+    private static final Object SCHEDULING_LOCK = new Object();
+
+    /**
+     * Sub-node of the site holding its publication settings, which is never published so that saving the settings does not mark the site
+     * as modified.
+     */
+    private static final String SITE_PUBLICATION_SETTINGS_NODE = "publicationSettings";
+
+    /**
+     * Node type of the sub-node of the site holding its publication settings.
+     */
+    private static final String SITE_PUBLICATION_SETTINGS_TYPE = "jnt:sitePublicationSettings";
+
+    /**
+     * Site property overriding the number of sub-trees published in parallel.
+     */
+    private static final String SITE_PUBLICATION_THREADS = "publicationThreads";
+
+    /**
+     * Site property overriding the cron expression of the start of the off-peak publication windows.
+     */
+    private static final String SITE_PUBLICATION_OFF_PEAK_CRON = "publicationOffPeakCron";
+
+    /**
+     * Site property enabling the throttled publication, with the maximum number of nodes published per second.
+     */
+    private static final String SITE_PUBLICATION_MAX_NODES_PER_SECOND = "publicationMaxNodesPerSecond";
+
+    /**
+     * Site property overriding the commit latency in milliseconds above which a throttled publication slows down.
+     */
+    private static final String SITE_PUBLICATION_LATENCY_THRESHOLD = "publicationLatencyThreshold";
+
+    /**
+     * Format of the time a publication is deferred to, as sent by a datetime-local input.
+     */
+    private static final String SCHEDULED_TIME_FORMAT = "yyyy-MM-dd'T'HH:mm";
+
+    private static final int MAX_TIME_ZONE_OFFSET = 14 * 60;
+
+    /**
+     * Maximum number of invalid paths of a bulk publication listed in the error message.
+     */
+    private static final int INVALID_PATHS_SAMPLE_SIZE = 10;
+
+    /**
+     * Query of the nodes of a tree, counted up to a limit to tell small publications from large ones.
+     */
+    private static final String DESCENDANTS_QUERY = "SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, '%s')";
+
+    /**
+     * Query of the nodes of a tree in some languages needing publication, either never published or modified since a given time.
+     */
+    private static final String ESTIMATE_QUERY = "SELECT * FROM [nt:base] AS n WHERE ISDESCENDANTNODE(n, '%s') AND n.[jcr:lastModified] IS NOT NULL"
+            + " AND (n.[j:lastPublished] IS NULL%s) AND (n.[jcr:language] IS NULL%s)";
+
+    /**
+     * Maximum number of nodes counted by a publication estimate.
+     */
+    private static final int ESTIMATE_MAX_NODES = 10000;
+
+    /**
+     * Maximum number of nodes read by a publication estimate, the count being a lower bound when they are not all read. Translations are
+     * counted as the node they translate, so more nodes than counted may be read.
+     */
+    private static final int ESTIMATE_MAX_SCANNED_NODES = 2 * ESTIMATE_MAX_NODES;
+
+    /**
+     * Maximum number of nodes never published checked for a conflict with a live node, the conflicts of the other ones being extrapolated.
+     */
+    private static final int ESTIMATE_CONFLICT_SAMPLE = 500;
+
+    /**
+     * Number of recent successful publications of a site from which the publication throughput is estimated.
+     */
+    private static final int ESTIMATE_RECENT_JOBS = 10;
+
     @Autowired
     private transient SchedulerService schedulerService;
 
+    @Autowired
+    private transient PublicationJobSettings publicationJobSettings;
+
+    @Autowired
+    private transient PublicationInfoCache publicationInfoCache;
+
+    @Autowired
+    private transient PublicationJobIndex publicationJobIndex;
+
+    @Autowired
+    private transient PublicationProgressRegistry publicationProgressRegistry;
+
+    @Autowired
+    private transient PublicationJobAdmission publicationJobAdmission;
+
+    @Autowired
+    private transient PublicationWatermarkService publicationWatermarkService;
+
     /**
      * Returns a new instance of the site publication data model to be used when displaying the form.
      *
@@ -150,29 +283,556 @@ public class SitePublicationFlowHandler implements Serializable {
         return sitePublication;
     }
 
-    private boolean isNodePathValid(final String nodePath, String sitePath) throws RepositoryException {
+    /**
+     * Returns the publication settings of the current site to be used when displaying the settings form.
+     *
+     * @param renderContext current DX rendering context instance
+     * @return the publication settings of the current site, empty where the module wide settings apply
+     */
+    public SitePublicationSettings initSiteSettings(RenderContext renderContext) {
+        SitePublicationSettings settings = new SitePublicationSettings();
+        try {
+            JCRNodeWrapper settingsNode = getSettingsNode(renderContext.getSite());
+            settings.setThreads(getSiteProperty(settingsNode, SITE_PUBLICATION_THREADS));
+            settings.setMaxNodesPerSecond(getSiteProperty(settingsNode, SITE_PUBLICATION_MAX_NODES_PER_SECOND));
+            settings.setLatencyThreshold(getSiteProperty(settingsNode, SITE_PUBLICATION_LATENCY_THRESHOLD));
+            settings.setOffPeakCron(getSiteProperty(settingsNode, SITE_PUBLICATION_OFF_PEAK_CRON));
+        } catch (RepositoryException e) {
+            throw new JahiaRuntimeException(e);
+        }
+        return settings;
+    }
+
+    /**
+     * Stores the publication settings of the current site, the empty ones being removed so that the module wide settings apply.
+     *
+     * @param settings the publication settings of the site
+     * @param renderContext current DX rendering context instance
+     * @param messages the message context instance
+     * @return true if the settings were saved, false if they are not valid or could not be saved
+     */
+    public boolean saveSiteSettings(SitePublicationSettings settings, RenderContext renderContext, MessageContext messages) {
+        Long threads = getValidSiteSetting(settings.getThreads(), "threads", messages);
+        Long maxNodesPerSecond = getValidSiteSetting(settings.getMaxNodesPerSecond(), "maxNodesPerSecond", messages);
+        Long latencyThreshold = getValidSiteSetting(settings.getLatencyThreshold(), "latencyThreshold", messages);
+        String offPeakCron = StringUtils.defaultIfEmpty(settings.getOffPeakCron(), null);
+        if (offPeakCron != null && !CronExpression.isValidExpression(offPeakCron)) {
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.siteSettings.offPeakCron.invalid").arg(offPeakCron).build());
+        }
+        if (messages.hasErrorMessages()) {
+            return false;
+        }
 
-        if (!nodePath.equals(sitePath) && !nodePath.startsWith(sitePath + "/")) {
+        try {
+            JCRSiteNode site = renderContext.getSite();
+            JCRNodeWrapper settingsNode = site.hasNode(SITE_PUBLICATION_SETTINGS_NODE) ? site.getNode(SITE_PUBLICATION_SETTINGS_NODE)
+                    : site.addNode(SITE_PUBLICATION_SETTINGS_NODE, SITE_PUBLICATION_SETTINGS_TYPE);
+            setSiteProperty(settingsNode, SITE_PUBLICATION_THREADS, threads);
+            setSiteProperty(settingsNode, SITE_PUBLICATION_MAX_NODES_PER_SECOND, maxNodesPerSecond);
+            setSiteProperty(settingsNode, SITE_PUBLICATION_LATENCY_THRESHOLD, latencyThreshold);
+            if (offPeakCron != null) {
+                settingsNode.setProperty(SITE_PUBLICATION_OFF_PEAK_CRON, offPeakCron);
+            } else if (settingsNode.hasProperty(SITE_PUBLICATION_OFF_PEAK_CRON)) {
+                settingsNode.getProperty(SITE_PUBLICATION_OFF_PEAK_CRON).remove();
+            }
+            site.getSession().save();
+            messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.siteSettings.saved").build());
+            return true;
+        } catch (RepositoryException e) {
+            logger.error("An error occurred saving the publication settings of the site", e);
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.error.general")
+                    .arg(e.getMessage()).build());
             return false;
         }
+    }
+
+    /**
+     * Returns the node holding the publication settings of a site: its settings sub-node, or the site node itself for the settings saved
+     * by previous versions of the module as properties of the site.
+     */
+    private static JCRNodeWrapper getSettingsNode(JCRSiteNode site) throws RepositoryException {
+        return site.hasNode(SITE_PUBLICATION_SETTINGS_NODE) ? site.getNode(SITE_PUBLICATION_SETTINGS_NODE) : site;
+    }
+
+    private static String getSiteProperty(JCRNodeWrapper settingsNode, String name) throws RepositoryException {
+        return settingsNode.hasProperty(name) ? settingsNode.getProperty(name).getString() : null;
+    }
+
+    private static void setSiteProperty(JCRNodeWrapper settingsNode, String name, Long value) throws RepositoryException {
+        if (value != null) {
+            settingsNode.setProperty(name, value);
+        } else if (settingsNode.hasProperty(name)) {
+            settingsNode.getProperty(name).remove();
+        }
+    }
+
+    /**
+     * Parses a numeric site setting, which must be a positive integer if it is not empty.
+     *
+     * @return the value of the setting, or null if it is empty or not valid
+     */
+    private static Long getValidSiteSetting(String value, String setting, MessageContext messages) {
+        if (StringUtils.isEmpty(value)) {
+            return null;
+        }
+        if (StringUtils.isNumeric(value) && value.length() < 10 && Long.parseLong(value) > 0) {
+            return Long.parseLong(value);
+        }
+        messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.siteSettings." + setting + ".invalid").arg(value).build());
+        return null;
+    }
 
-        return JCRTemplate.getInstance().doExecuteWithSystemSession(new JCRCallback<Boolean>() {
+    /**
+     * Checks the given node paths in a single session.
+     *
+     * @return the paths which are not in the site or do not exist
+     */
+    private List<String> getInvalidNodePaths(final Collection<String> nodePaths, final String sitePath) throws RepositoryException {
+
+        return JCRTemplate.getInstance().doExecuteWithSystemSession(new JCRCallback<List<String>>() {
             @Override
-            public Boolean doInJCR(JCRSessionWrapper session) throws RepositoryException {
-                return session.nodeExists(nodePath);
+            public List<String> doInJCR(JCRSessionWrapper session) throws RepositoryException {
+                List<String> invalidPaths = new ArrayList<>();
+                for (String nodePath : nodePaths) {
+                    if (!nodePath.equals(sitePath) && !nodePath.startsWith(sitePath + "/") || !session.nodeExists(nodePath)) {
+                        invalidPaths.add(nodePath);
+                    }
+                }
+                return invalidPaths;
             }
         });
     }
 
-    private void scheduleJob(String nodePath, String siteUuid, String lang, Locale uiLocale) throws SchedulerException {
-        logger.info("Schedulling publication job for node {} in language {}", nodePath, lang);
+    private boolean scheduleJob(List<String> nodePaths, String lane, JCRSiteNode site, String lang, Locale uiLocale, String requestId, Long scheduledFor, MessageContext messages) throws SchedulerException, RepositoryException {
+        logger.info("Schedulling {} publication job for node(s) {} in language {}", lane, nodePaths, lang);
+        JobDetail jobDetail = createJob(nodePaths.get(0), site.getIdentifier(), lang, uiLocale, requestId, scheduledFor);
+        applySiteSettings(jobDetail.getJobDataMap(), site);
+        setPaths(jobDetail.getJobDataMap(), nodePaths);
+        jobDetail.getJobDataMap().put(SiteAdminPublicationJob.PUBLICATION_JOB_LANE, lane);
+        return scheduleCoalescedJob(jobDetail, messages);
+    }
+
+    private boolean scheduleJob(List<String> nodePaths, String lane, JCRSiteNode site, Collection<String> languages, Locale uiLocale, String requestId, Long scheduledFor, MessageContext messages) throws SchedulerException, RepositoryException {
+        logger.info("Schedulling {} publication job for node(s) {} in languages {}", lane, nodePaths, languages);
+        JobDetail jobDetail = createJob(nodePaths.get(0), site.getIdentifier(), StringUtils.join(languages, ", "), uiLocale, requestId, scheduledFor);
+        jobDetail.getJobDataMap().put(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGES, new ArrayList<>(languages));
+        applySiteSettings(jobDetail.getJobDataMap(), site);
+        setPaths(jobDetail.getJobDataMap(), nodePaths);
+        jobDetail.getJobDataMap().put(SiteAdminPublicationJob.PUBLICATION_JOB_LANE, lane);
+        return scheduleCoalescedJob(jobDetail, messages);
+    }
+
+    /**
+     * Returns the lane of the jobs publishing the given trees: entire site publications are large, sub-tree publications are large when
+     * they hold more nodes than the configured limit. The nodes are counted with a query stopping at that limit, so that the estimate stays
+     * cheap for large trees. They are not counted when no limit of the admission control depends on the lane.
+     */
+    private String getLane(final List<String> nodePaths, String sitePath) throws RepositoryException {
+        final int largeJobNodes = publicationJobSettings.getLargeJobNodes();
+        if (nodePaths.contains(sitePath)) {
+            return SiteAdminPublicationJob.LANE_LARGE;
+        } else if (largeJobNodes <= 0 || !publicationJobAdmission.isLaneLimited()) {
+            return SiteAdminPublicationJob.LANE_SMALL;
+        }
+
+        return JCRTemplate.getInstance().doExecuteWithSystemSession(new JCRCallback<String>() {
+            @Override
+            public String doInJCR(JCRSessionWrapper session) throws RepositoryException {
+                long nodes = 0;
+                for (String nodePath : nodePaths) {
+                    Query query = session.getWorkspace().getQueryManager().createQuery(String.format(DESCENDANTS_QUERY, JCRContentUtils.sqlEncode(nodePath)), Query.JCR_SQL2);
+                    query.setLimit(largeJobNodes - nodes + 1);
+                    for (NodeIterator it = query.execute().getNodes(); it.hasNext(); it.nextNode()) {
+                        if (++nodes > largeJobNodes) {
+                            return SiteAdminPublicationJob.LANE_LARGE;
+                        }
+                    }
+                }
+                return SiteAdminPublicationJob.LANE_SMALL;
+            }
+        });
+    }
+
+    /**
+     * Sets the trees published by a job. Several trees are published together by a single job, which analyses them once, the nodes they
+     * share, e.g. referenced ones, being published only once.
+     */
+    private static void setPaths(JobDataMap jobDataMap, List<String> paths) {
+        jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_PATH, StringUtils.join(paths, ", "));
+        if (paths.size() > 1) {
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_PATHS, new ArrayList<>(paths));
+            // only a single tree can be published incrementally or split among several workers
+            jobDataMap.remove(SiteAdminPublicationJob.PUBLICATION_JOB_DELTA);
+            jobDataMap.remove(SiteAdminPublicationJob.PUBLICATION_JOB_THREADS);
+        } else {
+            jobDataMap.remove(SiteAdminPublicationJob.PUBLICATION_JOB_PATHS);
+        }
+    }
+
+    /**
+     * Schedules the given publication job unless a pending job of the same site already publishes its trees in its languages, in which
+     * case the request is dropped. Pending jobs of the same site and languages are merged into the new job, their trees being published
+     * by it. Only the pending jobs scheduled for the same time, i.e. immediately or for the same deferred time, are taken into account.
+     * The requests coalesced into a job are recorded in its data, so that every requester gets notified of its result.
+     *
+     * @return true if the job was scheduled, false if it was dropped
+     */
+    private boolean scheduleCoalescedJob(JobDetail jobDetail, MessageContext messages) throws SchedulerException {
+        JobDataMap jobDataMap = jobDetail.getJobDataMap();
+        Set<String> languages = SiteAdminPublicationJob.getLanguages(jobDataMap);
+        Set<String> paths = new TreeSet<>(SiteAdminPublicationJob.getPaths(jobDataMap));
+        String siteUuid = (String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_SITE_UUID);
+
+        synchronized (SCHEDULING_LOCK) {
+
+            List<JobDetail> pendingJobs = getPendingJobs(siteUuid, jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_SCHEDULED_FOR));
+            for (JobDetail pendingJob : pendingJobs) {
+                JobDataMap pendingJobData = pendingJob.getJobDataMap();
+                if (SiteAdminPublicationJob.getLanguages(pendingJobData).containsAll(languages)
+                        && isCovered(paths, SiteAdminPublicationJob.getPaths(pendingJobData))) {
+                    logger.info("Publication of {} in {} is already part of pending job {}", paths, languages, pendingJob.getName());
+                    addCoalescedRequests(pendingJobData, jobDataMap);
+                    schedulerService.getScheduler().addJob(pendingJob, true);
+                    messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.coalesced")
+                            .arg(pendingJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH))
+                            .arg(pendingJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE)).build());
+                    return false;
+                }
+            }
+
+            int mergedJobs = 0;
+            Scheduler scheduler = schedulerService.getScheduler();
+            for (JobDetail pendingJob : pendingJobs) {
+                JobDataMap pendingJobData = pendingJob.getJobDataMap();
+                if (!SiteAdminPublicationJob.getLanguages(pendingJobData).equals(languages) || !unscheduleJob(scheduler, pendingJob)) {
+                    continue;
+                }
+                logger.info("Merging pending job {} into the publication of {} in {}", pendingJob.getName(), paths, languages);
+                paths.addAll(SiteAdminPublicationJob.getPaths(pendingJobData));
+                addCoalescedRequests(jobDataMap, pendingJobData);
+                if (SiteAdminPublicationJob.LANE_LARGE.equals(pendingJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANE))) {
+                    jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_LANE, SiteAdminPublicationJob.LANE_LARGE);
+                }
+                scheduler.deleteJob(pendingJob.getName(), pendingJob.getGroup());
+                publicationJobIndex.remove(siteUuid, pendingJob.getName());
+                publicationJobAdmission.remove(pendingJob.getName());
+                mergedJobs++;
+            }
+
+            if (mergedJobs > 0) {
+                setPaths(jobDataMap, collapsePaths(paths));
+                messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.merged")
+                        .arg(mergedJobs).arg(jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH)).build());
+            }
+
+            schedule(jobDetail);
+            publicationJobIndex.add(siteUuid, jobDetail.getName());
+            return true;
+        }
+    }
+
+    /**
+     * Records the request of a job, and the ones already coalesced into it, as coalesced into another job.
+     */
+    private static void addCoalescedRequests(JobDataMap jobDataMap, JobDataMap coalescedJobData) {
+        List<Map<String, Object>> requests = new ArrayList<>(SiteAdminPublicationJob.getCoalescedRequests(jobDataMap));
+        Set<Object> requestIds = new HashSet<>();
+        requestIds.add(jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID));
+        for (Map<String, Object> request : requests) {
+            requestIds.add(request.get(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID));
+        }
+
+        Map<String, Object> coalescedRequest = new HashMap<>();
+        coalescedRequest.put(BackgroundJob.JOB_USERKEY, coalescedJobData.get(BackgroundJob.JOB_USERKEY));
+        coalescedRequest.put(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID, coalescedJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID));
+        coalescedRequest.put(SiteAdminPublicationJob.UI_LOCALE, coalescedJobData.get(SiteAdminPublicationJob.UI_LOCALE));
+        List<Map<String, Object>> coalescedRequests = new ArrayList<>();
+        coalescedRequests.add(coalescedRequest);
+        coalescedRequests.addAll(SiteAdminPublicationJob.getCoalescedRequests(coalescedJobData));
+        for (Map<String, Object> request : coalescedRequests) {
+            if (requestIds.add(request.get(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID))) {
+                requests.add(request);
+            }
+        }
+        jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_COALESCED_REQUESTS, requests);
+    }
+
+    /**
+     * Schedules a job immediately, or with a trigger firing at the time it is deferred to.
+     */
+    private void schedule(JobDetail jobDetail) throws SchedulerException {
+        String scheduledFor = (String) jobDetail.getJobDataMap().get(SiteAdminPublicationJob.PUBLICATION_JOB_SCHEDULED_FOR);
+        if (scheduledFor == null) {
+            schedulerService.scheduleJobNow(jobDetail);
+            return;
+        }
+        jobDetail.getJobDataMap().put(BackgroundJob.JOB_STATUS, BackgroundJob.STATUS_SCHEDULED);
+        SimpleTrigger trigger = new SimpleTrigger(jobDetail.getName() + "_Trigger", jobDetail.getGroup(), new Date(Long.parseLong(scheduledFor)));
+        // a window missed while the server was down is caught up as soon as possible
+        trigger.setMisfireInstruction(SimpleTrigger.MISFIRE_INSTRUCTION_FIRE_NOW);
+        schedulerService.getScheduler().scheduleJob(jobDetail, trigger);
+    }
+
+    /**
+     * Returns the publication jobs of the given site which are neither started nor completed, and are scheduled for the given time.
+     */
+    private List<JobDetail> getPendingJobs(String siteUuid, Object scheduledFor) throws SchedulerException {
+        Set<String> executingJobs = new HashSet<>();
+        for (Object context : schedulerService.getScheduler().getCurrentlyExecutingJobs()) {
+            executingJobs.add(((JobExecutionContext) context).getJobDetail().getName());
+        }
+        List<JobDetail> pendingJobs = new ArrayList<>();
+        for (JobDetail job : publicationJobIndex.getJobs(siteUuid)) {
+            JobDataMap jobDataMap = job.getJobDataMap();
+            String status = (String) jobDataMap.get(BackgroundJob.JOB_STATUS);
+            if (!jobDataMap.containsKey(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT) && (BackgroundJob.STATUS_ADDED.equals(status)
+                    || BackgroundJob.STATUS_SCHEDULED.equals(status)) && !executingJobs.contains(job.getName())
+                    && Objects.equals(scheduledFor, jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_SCHEDULED_FOR))) {
+                pendingJobs.add(job);
+            }
+        }
+        return pendingJobs;
+    }
+
+    /**
+     * Tells whether the given publication job is running on this server.
+     */
+    private static boolean isExecuting(Scheduler scheduler, String jobName) throws SchedulerException {
+        for (Object context : scheduler.getCurrentlyExecutingJobs()) {
+            if (((JobExecutionContext) context).getJobDetail().getName().equals(jobName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes the triggers of a pending job, so that it does not start.
+     *
+     * @return false if a trigger had already fired
+     */
+    private static boolean unscheduleJob(Scheduler scheduler, JobDetail job) throws SchedulerException {
+        Trigger[] triggers = scheduler.getTriggersOfJob(job.getName(), job.getGroup());
+        if (triggers.length == 0) {
+            return false;
+        }
+        for (Trigger trigger : triggers) {
+            if (!scheduler.unscheduleJob(trigger.getName(), trigger.getGroup())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isCovered(Collection<String> paths, Collection<String> coveringPaths) {
+        for (String path : paths) {
+            boolean covered = false;
+            for (String coveringPath : coveringPaths) {
+                if (path.equals(coveringPath) || path.startsWith(coveringPath + "/")) {
+                    covered = true;
+                    break;
+                }
+            }
+            if (!covered) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes the paths of the given sorted set which are below another one.
+     */
+    private static List<String> collapsePaths(Set<String> sortedPaths) {
+        List<String> paths = new ArrayList<>(sortedPaths.size());
+        for (String path : sortedPaths) {
+            if (paths.isEmpty() || !isCovered(Collections.singleton(path), paths)) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    private void applySiteSettings(JobDataMap jobDataMap, JCRSiteNode site) throws RepositoryException {
+        JCRNodeWrapper settingsNode = getSettingsNode(site);
+        int threads = settingsNode.hasProperty(SITE_PUBLICATION_THREADS) ? (int) settingsNode.getProperty(SITE_PUBLICATION_THREADS).getLong()
+                : publicationJobSettings.getThreads();
+        if (threads > 1) {
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_THREADS, Integer.toString(threads));
+        }
+        if (publicationJobSettings.getDeltaMaxNodes() > 0 && site.getPath().equals(jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH))) {
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_DELTA, Integer.toString(publicationJobSettings.getDeltaMaxNodes()));
+        }
+        int maxNodesPerSecond = settingsNode.hasProperty(SITE_PUBLICATION_MAX_NODES_PER_SECOND) ? (int) settingsNode.getProperty(SITE_PUBLICATION_MAX_NODES_PER_SECOND).getLong()
+                : publicationJobSettings.getMaxNodesPerSecond();
+        if (maxNodesPerSecond > 0) {
+            long latencyThreshold = settingsNode.hasProperty(SITE_PUBLICATION_LATENCY_THRESHOLD) ? settingsNode.getProperty(SITE_PUBLICATION_LATENCY_THRESHOLD).getLong()
+                    : publicationJobSettings.getLatencyThreshold();
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_MAX_RATE, Integer.toString(maxNodesPerSecond));
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_LATENCY_THRESHOLD, Long.toString(latencyThreshold));
+        }
+    }
+
+    private JobDetail createJob(String nodePath, String siteUuid, String lang, Locale uiLocale, String requestId, Long scheduledFor) {
         JobDetail jobDetail = BackgroundJob.createJahiaJob("Publication", SiteAdminPublicationJob.class);
         JobDataMap jobDataMap = jobDetail.getJobDataMap();
         jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_SITE_UUID, siteUuid);
         jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_PATH, nodePath);
         jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE, lang);
         jobDataMap.put(SiteAdminPublicationJob.UI_LOCALE, uiLocale);
-        schedulerService.scheduleJobNow(jobDetail);
+        jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_REQUEST_ID, requestId);
+        jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_SUBMITTED, Long.toString(System.currentTimeMillis()));
+        if (scheduledFor != null) {
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_SCHEDULED_FOR, Long.toString(scheduledFor));
+        }
+        if (publicationJobSettings.getBatchSize() > 0) {
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_BATCH_SIZE, Integer.toString(publicationJobSettings.getBatchSize()));
+        }
+        if (publicationJobSettings.getMaxDuration() > 0) {
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_MAX_DURATION, Long.toString(publicationJobSettings.getMaxDuration()));
+        }
+        if (publicationJobSettings.getAnalysisMaxNodes() > 0) {
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_ANALYSIS_MAX_NODES, Integer.toString(publicationJobSettings.getAnalysisMaxNodes()));
+        }
+        return jobDetail;
+    }
+
+    /**
+     * Returns the time zone of the user's browser, the publication time being entered and displayed in the user's local time rather than
+     * the server one.
+     *
+     * @return a time zone with the offset sent by the browser, or the default time zone of the server if none or an invalid one was sent
+     */
+    private static TimeZone getTimeZone(SitePublication sitePublication) {
+        Integer offset = sitePublication.getTimeZoneOffset();
+        if (offset == null || Math.abs(offset) > MAX_TIME_ZONE_OFFSET) {
+            return TimeZone.getDefault();
+        }
+        // the browser offset is positive behind UTC, the opposite of the Java one
+        return new SimpleTimeZone(-offset * 60 * 1000, "GMT");
+    }
+
+    /**
+     * Returns the time a publication is deferred to: either the time given by the user, or the start of the next off-peak window of the
+     * site.
+     *
+     * @return the time in milliseconds, or null if it is not valid
+     */
+    private Long getValidScheduledTime(SitePublication sitePublication, JCRSiteNode site, MessageContext messages) throws RepositoryException {
+
+        if (sitePublication.getTiming() == SitePublication.Timing.AT) {
+            if (StringUtils.isEmpty(sitePublication.getScheduledTime())) {
+                messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.timing.at.mandatory").build());
+                return null;
+            }
+            SimpleDateFormat format = new SimpleDateFormat(SCHEDULED_TIME_FORMAT);
+            format.setLenient(false);
+            format.setTimeZone(getTimeZone(sitePublication));
+            Date scheduledTime;
+            try {
+                scheduledTime = format.parse(sitePublication.getScheduledTime().replace(' ', 'T'));
+            } catch (ParseException e) {
+                messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.timing.at.invalid")
+                        .arg(sitePublication.getScheduledTime()).build());
+                return null;
+            }
+            if (scheduledTime.getTime() <= System.currentTimeMillis()) {
+                messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.timing.at.past").build());
+                return null;
+            }
+            return scheduledTime.getTime();
+        }
+
+        JCRNodeWrapper settingsNode = getSettingsNode(site);
+        String cron = settingsNode.hasProperty(SITE_PUBLICATION_OFF_PEAK_CRON) ? settingsNode.getProperty(SITE_PUBLICATION_OFF_PEAK_CRON).getString()
+                : publicationJobSettings.getOffPeakCron();
+        Date windowStart = null;
+        if (StringUtils.isNotBlank(cron)) {
+            try {
+                windowStart = new CronExpression(cron).getNextValidTimeAfter(new Date());
+            } catch (ParseException e) {
+                logger.warn("Invalid off-peak publication window expression [{}] for site {}: {}", cron, site.getSiteKey(), e.getMessage());
+            }
+        }
+        if (windowStart == null) {
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.timing.offPeak.undefined").build());
+            return null;
+        }
+        return windowStart.getTime();
+    }
+
+    /**
+     * Returns the paths of the trees to publish, the paths below another selected one being left out.
+     *
+     * @return the sorted paths, or null if the selection is not valid
+     */
+    private List<String> getValidNodePaths(SitePublication sitePublication, MessageContext messages) throws RepositoryException {
+
+        if (sitePublication.getScope() == null) {
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.scope.mandatory").build());
+            return null;
+        }
+        if (sitePublication.getLanguages().isEmpty()) {
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.languages.mandatory").build());
+            return null;
+        }
+
+        String currentSitePath = "/sites/" + sitePublication.getCurrentSiteKey();
+        if (sitePublication.getScope() == SitePublication.Scope.ENTIRE_SITE) {
+            return Collections.singletonList(currentSitePath);
+        }
+
+        if (sitePublication.getScope() == SitePublication.Scope.SITE_SUBNODE) {
+            String nodePath = StringUtils.removeEnd(sitePublication.getNodePath(), "/");
+            if (StringUtils.isEmpty(nodePath) || !getInvalidNodePaths(Collections.singleton(nodePath), currentSitePath).isEmpty()) {
+                messages.addMessage(
+                        new MessageBuilder().error().code("siteSettingsPublication.scope.node.invalid").build());
+                return null;
+            }
+            return Collections.singletonList(nodePath);
+        }
+
+        Set<String> nodePaths = parseNodePaths(sitePublication.getNodePaths());
+        if (nodePaths.isEmpty()) {
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.scope.nodes.mandatory").build());
+            return null;
+        }
+        List<String> invalidPaths = getInvalidNodePaths(nodePaths, currentSitePath);
+        if (!invalidPaths.isEmpty()) {
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.scope.nodes.invalid").arg(invalidPaths.size())
+                    .arg(StringUtils.join(invalidPaths.subList(0, Math.min(INVALID_PATHS_SAMPLE_SIZE, invalidPaths.size())), ", ")).build());
+            return null;
+        }
+        return collapsePaths(nodePaths);
+    }
+
+    /**
+     * Parses the paths of the nodes to publish in bulk, one per line, empty lines and lines starting with a # being ignored.
+     *
+     * @return the sorted paths
+     */
+    private static Set<String> parseNodePaths(String nodePaths) {
+        Set<String> paths = new TreeSet<>();
+        for (String line : StringUtils.split(StringUtils.defaultString(nodePaths), "\r\n")) {
+            String path = StringUtils.removeEnd(line.trim(), "/");
+            if (!path.isEmpty() && !path.startsWith("#")) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    private List<Set<String>> getJobLanguages(SitePublication sitePublication) {
+        List<Set<String>> jobLanguages = new ArrayList<>();
+        if (publicationJobSettings.isMultiLanguageJob() && sitePublication.getLanguages().size() > 1) {
+            // a single job computes the publication info once and publishes all the languages together
+            jobLanguages.add(new TreeSet<>(sitePublication.getLanguages()));
+        } else {
+            for (String lang : sitePublication.getLanguages()) {
+                jobLanguages.add(Collections.singleton(lang));
+            }
+        }
+        return jobLanguages;
     }
 
     /**
@@ -190,28 +850,36 @@ public class SitePublicationFlowHandler implements Serializable {
 
         try {
 
-            if (sitePublication.getScope() == null) {
-                messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.scope.mandatory").build());
+            List<String> nodePaths = getValidNodePaths(sitePublication, messages);
+            if (nodePaths == null) {
                 return sitePublication;
             }
-            if (sitePublication.getLanguages().isEmpty()) {
-                messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.languages.mandatory").build());
-                return sitePublication;
+            Long scheduledFor = null;
+            if (sitePublication.getTiming() != SitePublication.Timing.NOW) {
+                scheduledFor = getValidScheduledTime(sitePublication, renderContext.getSite(), messages);
+                if (scheduledFor == null) {
+                    return sitePublication;
+                }
             }
 
-            boolean isEntireSitePublication = sitePublication.getScope() == SitePublication.Scope.ENTIRE_SITE;
-            String currentSitePath = "/sites/" + sitePublication.getCurrentSiteKey();
-
-            if (!isEntireSitePublication && !isNodePathValid(sitePublication.getNodePath(), currentSitePath)) {
-                messages.addMessage(
-                        new MessageBuilder().error().code("siteSettingsPublication.scope.node.invalid").build());
-                return sitePublication;
+            // the jobs of the same request are notified together
+            String requestId = UUID.randomUUID().toString();
+            String lane = getLane(nodePaths, renderContext.getSite().getPath());
+            boolean scheduled = false;
+            for (Set<String> languages : getJobLanguages(sitePublication)) {
+                if (languages.size() > 1) {
+                    scheduled |= scheduleJob(nodePaths, lane, renderContext.getSite(), languages, renderContext.getUILocale(), requestId, scheduledFor, messages);
+                } else {
+                    scheduled |= scheduleJob(nodePaths, lane, renderContext.getSite(), languages.iterator().next(), renderContext.getUILocale(), requestId, scheduledFor, messages);
+                }
             }
-
-            for (String lang : sitePublication.getLanguages()) {
-                scheduleJob((isEntireSitePublication ? currentSitePath : sitePublication.getNodePath()), sitePublication.getCurrentSiteUuid(), lang, renderContext.getUILocale());
+            if (scheduled && scheduledFor != null) {
+                DateFormat format = DateFormat.getDateTimeInstance(DateFormat.SHORT, DateFormat.SHORT, renderContext.getUILocale());
+                format.setTimeZone(getTimeZone(sitePublication));
+                messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.deferred").arg(format.format(new Date(scheduledFor))).build());
+            } else if (scheduled) {
+                messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.started").build());
             }
-            messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.started").build());
             // we are successful, reset the model data
             return initSitePublication(renderContext);
 
@@ -223,24 +891,310 @@ public class SitePublicationFlowHandler implements Serializable {
         }
     }
 
-    public List<JobDetail> getPublicationJobs(final JCRSiteNode site) throws SchedulerException {
+    /**
+     * Estimates the publication in selected languages without analysing the publication info of the trees, which takes long for large
+     * trees. The nodes never published or modified since their last publication are counted, the ones never published whose path is already
+     * used by another node in live being counted as conflicts. When an entire site publication in these languages is known, the query only
+     * returns the nodes never published or modified since then; otherwise all the nodes are read, up to a limit above which the count is a
+     * lower bound. The duration is estimated from the throughput of the recent publications of the site.
+     *
+     * @param sitePublication the site publication data model object
+     * @param renderContext current DX rendering context instance
+     * @param messages the message context instance
+     * @return the estimate for each job to be started, or null if the site publication data is not valid
+     */
+    public List<PublicationEstimate> estimatePublication(final SitePublication sitePublication, RenderContext renderContext,
+            MessageContext messages) {
 
-        List<JobDetail> publications = schedulerService.getAllJobs(BackgroundJob.getGroupName(SiteAdminPublicationJob.class));
+        try {
 
-        CollectionUtils.filter(publications, new Predicate() {
+            final List<String> nodePaths = getValidNodePaths(sitePublication, messages);
+            if (nodePaths == null) {
+                return null;
+            }
 
-            @Override
-            public boolean evaluate(Object job) {
-                JobDataMap publicationData = ((JobDetail) job).getJobDataMap();
-                String siteUuid = (String) publicationData.get(SiteAdminPublicationJob.PUBLICATION_JOB_SITE_UUID);
-                try {
-                    return (siteUuid.equals(site.getIdentifier()));
-                } catch (RepositoryException e) {
-                    throw new JahiaRuntimeException(e);
+            final double throughput = getRecentThroughput(sitePublication.getCurrentSiteUuid());
+            final List<Set<String>> jobLanguages = getJobLanguages(sitePublication);
+            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.LIVE_WORKSPACE, null, new JCRCallback<List<PublicationEstimate>>() {
+
+                @Override
+                public List<PublicationEstimate> doInJCR(final JCRSessionWrapper liveSession) throws RepositoryException {
+                    return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, null, new JCRCallback<List<PublicationEstimate>>() {
+
+                        @Override
+                        public List<PublicationEstimate> doInJCR(JCRSessionWrapper session) throws RepositoryException {
+                            List<PublicationEstimate> estimates = new ArrayList<>(jobLanguages.size());
+                            for (Set<String> languages : jobLanguages) {
+                                Long since = publicationWatermarkService.getWatermark(sitePublication.getCurrentSiteUuid(), languages);
+                                estimates.add(estimate(session, liveSession, nodePaths, languages, since, throughput));
+                            }
+                            return estimates;
+                        }
+                    });
                 }
+            });
+
+        } catch (Exception e) {
+            logger.error("An error occurred estimating publication", e);
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.error.general")
+                    .arg(e.getMessage()).build());
+            return null;
+        }
+    }
+
+    /**
+     * Estimates a publication with queries of the nodes needing it. The nodes modified since their last publication are the ones modified
+     * after the watermark of the site, if any, otherwise after the last publication of the published tree: nodes modified after that and
+     * published on their own since are counted as well. The conflicts are looked for among the first nodes never published only.
+     */
+    private static PublicationEstimate estimate(JCRSessionWrapper session, JCRSessionWrapper liveSession, List<String> nodePaths, Set<String> languages,
+            Long since, double throughput) throws RepositoryException {
+        StringBuilder languageConstraint = new StringBuilder();
+        for (String language : languages) {
+            languageConstraint.append(" OR n.[jcr:language] = '").append(JCRContentUtils.sqlEncode(language)).append('\'');
+        }
+
+        // translations are counted as the node they translate
+        Set<String> paths = new HashSet<>();
+        int neverPublished = 0;
+        int sampled = 0;
+        int sampleConflicts = 0;
+        int scanned = 0;
+        boolean lowerBound = false;
+        for (Iterator<String> pathIterator = nodePaths.iterator(); pathIterator.hasNext() && !lowerBound; ) {
+            String nodePath = pathIterator.next();
+            Calendar modifiedAfter;
+            if (since != null) {
+                modifiedAfter = Calendar.getInstance();
+                modifiedAfter.setTimeInMillis(since);
+            } else {
+                JCRNodeWrapper root = session.getNode(nodePath);
+                modifiedAfter = root.hasProperty(Constants.LASTPUBLISHED) ? root.getProperty(Constants.LASTPUBLISHED).getDate() : null;
+            }
+            String publicationConstraint = modifiedAfter != null
+                    ? " OR n.[jcr:lastModified] > CAST('" + ISO8601.format(modifiedAfter) + "' AS DATE)" : "";
+            Query query = session.getWorkspace().getQueryManager().createQuery(String.format(ESTIMATE_QUERY, JCRContentUtils.sqlEncode(nodePath),
+                    publicationConstraint, languageConstraint), Query.JCR_SQL2);
+            query.setLimit(ESTIMATE_MAX_SCANNED_NODES - scanned);
+            for (NodeIterator it = query.execute().getNodes(); it.hasNext() && !lowerBound; ) {
+                JCRNodeWrapper node = (JCRNodeWrapper) it.nextNode();
+                scanned++;
+                lowerBound = scanned >= ESTIMATE_MAX_SCANNED_NODES;
+                // the nodes which are never published, like the publication settings of the site, are ignored
+                if (node.isNodeType("jmix:nolive")) {
+                    continue;
+                }
+                if (node.isNodeType(Constants.JAHIANT_TRANSLATION)) {
+                    node = node.getParent();
+                } else if (!node.hasProperty(Constants.LASTPUBLISHED)) {
+                    neverPublished++;
+                    if (sampled < ESTIMATE_CONFLICT_SAMPLE) {
+                        sampled++;
+                        if (liveSession.nodeExists(node.getPath()) && !liveSession.getNode(node.getPath()).getIdentifier().equals(node.getIdentifier())) {
+                            sampleConflicts++;
+                        }
+                    }
+                }
+                paths.add(node.getPath());
+                lowerBound |= paths.size() >= ESTIMATE_MAX_NODES;
+            }
+        }
+        int conflicts = sampled > 0 ? (int) Math.round((double) sampleConflicts * neverPublished / sampled) : 0;
+        return new PublicationEstimate(StringUtils.join(languages, ", "), paths.size(), lowerBound, conflicts,
+                throughput > 0 ? (long) (paths.size() / throughput) : -1);
+    }
+
+    /**
+     * Returns the number of nodes published per millisecond by the recent successful publications of a site, from their start to the end
+     * of their publication.
+     *
+     * @return the throughput, or 0 if no recent publication is known
+     */
+    private double getRecentThroughput(String siteUuid) throws SchedulerException {
+        List<JobDataMap> recentJobs = new ArrayList<>();
+        for (JobDetail job : publicationJobIndex.getJobs(siteUuid)) {
+            JobDataMap jobDataMap = job.getJobDataMap();
+            Object result = jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT);
+            if ((SiteAdminPublicationJob.SUCCESS.equals(result) || SiteAdminPublicationJob.PARTIAL.equals(result))
+                    && jobDataMap.containsKey(SiteAdminPublicationJob.PUBLICATION_JOB_PUBLISHED_NODES) && jobDataMap.containsKey(BackgroundJob.JOB_BEGIN)) {
+                recentJobs.add(jobDataMap);
+            }
+        }
+        Collections.sort(recentJobs, new Comparator<JobDataMap>() {
+            @Override
+            public int compare(JobDataMap jobDataMap1, JobDataMap jobDataMap2) {
+                return Long.compare(Long.parseLong((String) jobDataMap2.get(SiteAdminPublicationJob.PUBLICATION_JOB_END)),
+                        Long.parseLong((String) jobDataMap1.get(SiteAdminPublicationJob.PUBLICATION_JOB_END)));
             }
         });
 
-        return publications;
+        long nodes = 0;
+        long millis = 0;
+        for (JobDataMap jobDataMap : recentJobs.subList(0, Math.min(ESTIMATE_RECENT_JOBS, recentJobs.size()))) {
+            nodes += Long.parseLong((String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_PUBLISHED_NODES));
+            millis += Long.parseLong((String) jobDataMap.get(SiteAdminPublicationJob.PUBLICATION_JOB_END))
+                    - Long.parseLong((String) jobDataMap.get(BackgroundJob.JOB_BEGIN));
+        }
+        return millis > 0 ? (double) nodes / millis : 0;
+    }
+
+    /**
+     * Analyses the publication in selected languages the way the background jobs would do it if they were started now, without publishing
+     * anything. The publication info is kept in cache, so that the jobs started right after do not compute it again.
+     *
+     * @param sitePublication the site publication data model object
+     * @param renderContext current DX rendering context instance
+     * @param messages the message context instance
+     * @return the outcome of the analysis for each job to be started, or null if the site publication data is not valid
+     */
+    public List<PublicationPreflight> preflightPublication(SitePublication sitePublication, RenderContext renderContext,
+            MessageContext messages) {
+
+        try {
+
+            final List<String> nodePaths = getValidNodePaths(sitePublication, messages);
+            if (nodePaths == null) {
+                return null;
+            }
+
+            final List<Set<String>> jobLanguages = getJobLanguages(sitePublication);
+            return JCRTemplate.getInstance().doExecuteWithSystemSessionAsUser(null, Constants.EDIT_WORKSPACE, null, new JCRCallback<List<PublicationPreflight>>() {
+
+                @Override
+                public List<PublicationPreflight> doInJCR(JCRSessionWrapper session) throws RepositoryException {
+                    List<String> uuids = new ArrayList<>(nodePaths.size());
+                    for (String nodePath : nodePaths) {
+                        uuids.add(session.getNode(nodePath).getIdentifier());
+                    }
+                    List<PublicationPreflight> preflights = new ArrayList<>(jobLanguages.size());
+                    for (Set<String> languages : jobLanguages) {
+                        // the trees of a bulk publication share a single analysis, as in the job
+                        PublicationAnalysis analysis = new PublicationAnalysis();
+                        for (String uuid : uuids) {
+                            analysis.analyse(publicationInfoCache.getPublicationInfo(uuid, languages, true));
+                        }
+                        List<String> conflicts = new ArrayList<>();
+                        List<String> missingProperties = new ArrayList<>();
+                        for (PublicationInfoNode publicationInfo : analysis.getNonPublishableNodes()) {
+                            if (publicationInfo.getStatus() == PublicationInfo.CONFLICT) {
+                                conflicts.add(publicationInfo.getPath());
+                            } else {
+                                missingProperties.add(publicationInfo.getPath());
+                            }
+                        }
+                        preflights.add(new PublicationPreflight(StringUtils.join(languages, ", "), analysis.getAnalysedCount(),
+                                analysis.getPublishableUuids().size(), conflicts, missingProperties));
+                    }
+                    return preflights;
+                }
+            });
+
+        } catch (Exception e) {
+            logger.error("An error occurred analysing publication", e);
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.error.general")
+                    .arg(e.getMessage()).build());
+            return null;
+        }
+    }
+
+    /**
+     * Schedules a new publication job resuming a publication done in batches which failed: as the batches it committed are already
+     * published in live, the new job only publishes what was left.
+     *
+     * @param jobName the name of the failed publication job
+     * @param site the current site
+     * @param messages the message context instance
+     */
+    public void resumePublication(String jobName, JCRSiteNode site, MessageContext messages) {
+
+        try {
+
+            JobDetail failedJob = schedulerService.getScheduler().getJobDetail(jobName, BackgroundJob.getGroupName(SiteAdminPublicationJob.class));
+            JobDataMap failedJobData = (failedJob != null ? failedJob.getJobDataMap() : null);
+            if (failedJobData == null || !site.getIdentifier().equals(failedJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_SITE_UUID))
+                    || !(SiteAdminPublicationJob.UNEXPECTED_FAILURE.equals(failedJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT))
+                            || SiteAdminPublicationJob.CANCELLED.equals(failedJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT)))
+                    || !failedJobData.containsKey(SiteAdminPublicationJob.PUBLICATION_JOB_BATCHES_DONE)) {
+                messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.publicationJobs.resume.invalid").build());
+                return;
+            }
+
+            String nodePath = (String) failedJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_PATH);
+            logger.info("Schedulling publication job for node {} resuming job {}", nodePath, jobName);
+            JobDetail jobDetail = createJob(nodePath, site.getIdentifier(), (String) failedJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGE),
+                    (Locale) failedJobData.get(SiteAdminPublicationJob.UI_LOCALE), UUID.randomUUID().toString(), null);
+            JobDataMap jobDataMap = jobDetail.getJobDataMap();
+            if (failedJobData.containsKey(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGES)) {
+                jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGES, failedJobData.get(SiteAdminPublicationJob.PUBLICATION_JOB_LANGUAGES));
+            }
+            // the resumed job runs with the settings of the failed one, not with the current ones
+            for (String key : new String[] {SiteAdminPublicationJob.PUBLICATION_JOB_PATHS, SiteAdminPublicationJob.PUBLICATION_JOB_BATCH_SIZE, SiteAdminPublicationJob.PUBLICATION_JOB_THREADS,
+                    SiteAdminPublicationJob.PUBLICATION_JOB_DELTA, SiteAdminPublicationJob.PUBLICATION_JOB_MAX_RATE, SiteAdminPublicationJob.PUBLICATION_JOB_LATENCY_THRESHOLD,
+                    SiteAdminPublicationJob.PUBLICATION_JOB_LANE, SiteAdminPublicationJob.PUBLICATION_JOB_MAX_DURATION, SiteAdminPublicationJob.PUBLICATION_JOB_ANALYSIS_MAX_NODES}) {
+                if (failedJobData.containsKey(key)) {
+                    jobDataMap.put(key, failedJobData.get(key));
+                } else {
+                    jobDataMap.remove(key);
+                }
+            }
+            jobDataMap.put(SiteAdminPublicationJob.PUBLICATION_JOB_RESUMED_FROM, jobName);
+            if (scheduleCoalescedJob(jobDetail, messages)) {
+                messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.started").build());
+            }
+
+        } catch (Exception e) {
+            logger.error("An error occurred resuming publication", e);
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.error.general")
+                    .arg(e.getMessage()).build());
+        }
+    }
+
+    /**
+     * Cancels a publication job of the current site. A running job is requested to stop at its next checkpoint, i.e. before publishing
+     * or between two batches, the batches already committed remaining published; a job which did not start yet is removed.
+     *
+     * @param jobName the name of the job to cancel
+     * @param renderContext current DX rendering context instance
+     * @param messages the message context instance
+     */
+    public void cancelPublication(String jobName, RenderContext renderContext, MessageContext messages) {
+
+        try {
+
+            Scheduler scheduler = schedulerService.getScheduler();
+            JobDetail job = scheduler.getJobDetail(jobName, BackgroundJob.getGroupName(SiteAdminPublicationJob.class));
+            String siteUuid = renderContext.getSite().getIdentifier();
+            if (job == null || !siteUuid.equals(job.getJobDataMap().get(SiteAdminPublicationJob.PUBLICATION_JOB_SITE_UUID))) {
+                messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.publicationJobs.cancel.invalid").build());
+                return;
+            }
+
+            PublicationProgress progress = publicationProgressRegistry.get(jobName);
+            if (progress != null) {
+                logger.info("Cancelling publication job {} on behalf of {}", jobName, renderContext.getUser().getName());
+                progress.cancel(renderContext.getUser().getName());
+                messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.publicationJobs.cancel.requested").build());
+                return;
+            }
+
+            synchronized (SCHEDULING_LOCK) {
+                // a job which did not start yet still has its trigger
+                if (!isExecuting(scheduler, jobName) && unscheduleJob(scheduler, job)) {
+                    logger.info("Removing pending publication job {} on behalf of {}", jobName, renderContext.getUser().getName());
+                    scheduler.deleteJob(job.getName(), job.getGroup());
+                    publicationJobIndex.remove(siteUuid, jobName);
+                    publicationJobAdmission.remove(jobName);
+                    messages.addMessage(new MessageBuilder().info().code("siteSettingsPublication.publicationJobs.cancel.removed").build());
+                    return;
+                }
+            }
+            // completed, or running on another server of the cluster
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.publicationJobs.cancel.invalid").build());
+
+        } catch (Exception e) {
+            logger.error("An error occurred cancelling publication", e);
+            messages.addMessage(new MessageBuilder().error().code("siteSettingsPublication.error.general")
+                    .arg(e.getMessage()).build());
+        }
     }
 }
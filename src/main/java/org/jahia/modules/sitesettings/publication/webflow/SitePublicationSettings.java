@@ -0,0 +1,95 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.webflow;
+
+import java.io.Serializable;
+
+/**
+ * Model object for the publication settings of a site, overriding the module wide ones. An empty value means the module wide setting
+ * applies.
+ */
+public class SitePublicationSettings implements Serializable {
+
+    private static final long serialVersionUID = 3172094735671849082L;
+
+    private String threads;
+
+    private String maxNodesPerSecond;
+
+    private String latencyThreshold;
+
+    private String offPeakCron;
+
+    public String getThreads() {
+        return threads;
+    }
+
+    public String getMaxNodesPerSecond() {
+        return maxNodesPerSecond;
+    }
+
+    public String getLatencyThreshold() {
+        return latencyThreshold;
+    }
+
+    public String getOffPeakCron() {
+        return offPeakCron;
+    }
+
+    public void setThreads(String threads) {
+        this.threads = threads != null ? threads.trim() : threads;
+    }
+
+    public void setMaxNodesPerSecond(String maxNodesPerSecond) {
+        this.maxNodesPerSecond = maxNodesPerSecond != null ? maxNodesPerSecond.trim() : maxNodesPerSecond;
+    }
+
+    public void setLatencyThreshold(String latencyThreshold) {
+        this.latencyThreshold = latencyThreshold != null ? latencyThreshold.trim() : latencyThreshold;
+    }
+
+    public void setOffPeakCron(String offPeakCron) {
+        this.offPeakCron = offPeakCron != null ? offPeakCron.trim() : offPeakCron;
+    }
+}
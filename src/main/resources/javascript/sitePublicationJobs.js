@@ -0,0 +1,190 @@
+/*
+ * Last publications view: loads the publication jobs of the site page by page from the sitePublicationJobs action, the sorting and the
+ * filtering being done on the server. The conflicts and missing properties of a job are only loaded when its details are shown. While
+ * the page shows jobs which are not completed, the progress of the running ones is polled from the sitePublicationJobsProgress action and
+ * the page is reloaded when one of them completes.
+ */
+var sitePublicationJobs = (function ($) {
+    'use strict';
+
+    function escapeHtml(value) {
+        return $('<div/>').text(value == null ? '' : value).html();
+    }
+
+    function format(message) {
+        var args = Array.prototype.slice.call(arguments, 1);
+        return message.replace(/\{(\d+)\}/g, function (match, index) {
+            return args[index];
+        });
+    }
+
+    function list(title, items, count, moreLabel) {
+        if (!items || items.length === 0) {
+            return '';
+        }
+        var html = '<p>' + escapeHtml(title) + '</p><ul>';
+        $.each(items, function (i, item) {
+            html += '<li>' + escapeHtml(item) + '</li>';
+        });
+        if (count > items.length) {
+            html += '<li>' + escapeHtml(format(moreLabel, count - items.length)) + '</li>';
+        }
+        return html + '</ul>';
+    }
+
+    function renderProgress(progress) {
+        return '<div class="progress" style="margin-bottom: 0;"><div class="bar progress-bar" style="width: ' + progress.percent + '%;"></div></div>'
+            + '<small>' + escapeHtml(progress.label) + '</small>';
+    }
+
+    function init(options) {
+        var labels = options.labels;
+        var state = {offset: 0, limit: options.limit || 20, sort: 'begin', order: 'desc', path: '', status: ''};
+        var $table = $(options.table);
+        var $body = $table.find('tbody');
+        var $pager = $(options.pager);
+        var progressInterval = options.progressInterval || 3000;
+        var progressTimer = null;
+        var runningJobs = {};
+
+        function message(text) {
+            $body.html('<tr><td colspan="6">' + escapeHtml(text) + '</td></tr>');
+        }
+
+        function renderAction(eventId, job, label, cssClass) {
+            return ' <form action="' + escapeHtml(options.flowExecutionUrl) + '" method="post" style="display: inline;"'
+                + (cssClass ? ' class="' + cssClass + '"' : '') + '>'
+                + '<input type="hidden" name="_eventId" value="' + eventId + '"/>'
+                + '<input type="hidden" name="jobName" value="' + escapeHtml(job.name) + '"/>'
+                + '<button class="' + options.buttonClass + '" type="submit">' + escapeHtml(label) + '</button></form>';
+        }
+
+        function renderDetails(job) {
+            var cell = job.detailsLabel ? escapeHtml(job.detailsLabel) : '';
+            if (!job.completed) {
+                cell = '<div class="publication-job-progress">' + cell + '</div>'
+                    + renderAction('cancel', job, labels.cancel, 'publication-job-cancel');
+            }
+            if (job.hasDetails) {
+                cell += '<button type="button" class="' + options.buttonClass + ' publication-job-details" data-job="' + escapeHtml(job.name) + '">'
+                    + escapeHtml(labels.showDetails) + '</button>';
+            }
+            if (job.resumable) {
+                cell += renderAction('resume', job, labels.resume);
+            }
+            return cell;
+        }
+
+        function render(data) {
+            if (data.jobs.length === 0) {
+                message(labels.noItemFound);
+            } else {
+                var rows = '';
+                var pending = false;
+                $.each(data.jobs, function (i, job) {
+                    pending = pending || !job.completed;
+                    rows += '<tr data-job="' + escapeHtml(job.name) + '"><td>' + escapeHtml(job.begin) + '</td><td>' + escapeHtml(job.end) + '</td><td>' + escapeHtml(job.path)
+                        + '</td><td>' + escapeHtml(job.language) + '</td><td>' + escapeHtml(job.statusLabel) + '</td><td>'
+                        + renderDetails(job) + '</td></tr>';
+                });
+                $body.html(rows);
+                if (pending && options.progressUrl) {
+                    progressTimer = setTimeout(pollProgress, progressInterval);
+                }
+            }
+            $pager.find('.publication-jobs-range').text(data.total === 0 ? '' : format(labels.range, data.offset + 1,
+                Math.min(data.offset + data.limit, data.total), data.total));
+            $pager.find('.publication-jobs-previous').prop('disabled', data.offset === 0);
+            $pager.find('.publication-jobs-next').prop('disabled', data.offset + data.limit >= data.total);
+        }
+
+        function pollProgress() {
+            progressTimer = null;
+            $.ajax({url: options.progressUrl, dataType: 'json', cache: false}).done(function (data) {
+                var completed = false;
+                $.each(runningJobs, function (name) {
+                    completed = completed || !data.jobs[name];
+                });
+                runningJobs = data.jobs;
+                if (completed) {
+                    load();
+                    return;
+                }
+                $body.children('tr').each(function () {
+                    var progress = data.jobs[$(this).data('job')];
+                    if (progress) {
+                        $(this).find('.publication-job-progress').html(renderProgress(progress));
+                    }
+                });
+                progressTimer = setTimeout(pollProgress, progressInterval);
+            });
+        }
+
+        function load() {
+            if (progressTimer) {
+                clearTimeout(progressTimer);
+                progressTimer = null;
+            }
+            runningJobs = {};
+            $.ajax({url: options.url, data: state, dataType: 'json', cache: false}).done(render).fail(function () {
+                message(labels.loadError);
+            });
+        }
+
+        function showDetails(jobName) {
+            $.ajax({url: options.url, data: {jobName: jobName}, dataType: 'json', cache: false}).done(function (job) {
+                bootbox.alert({
+                    title: labels.details,
+                    message: '<p>' + format(escapeHtml(labels.publicationPath), '<strong>' + escapeHtml(job.path) + '</strong>') + '</p>'
+                        + '<p>' + escapeHtml(labels.language) + ': <strong>' + escapeHtml(job.language) + '</strong></p>'
+                        + '<p>' + escapeHtml(labels.startDate) + ': <strong>' + escapeHtml(job.begin) + '</strong></p>'
+                        + (job.detailsLabel ? '<p>' + escapeHtml(job.detailsLabel) + '</p>' : '')
+                        + list(labels.conflicts, job.conflicts, job.conflictCount, labels.more)
+                        + list(labels.missingProperties, job.missingProperties, job.missingPropertyCount, labels.more),
+                    buttons: {ok: {label: labels.close}}
+                });
+            }).fail(function () {
+                bootbox.alert(labels.loadError);
+            });
+        }
+
+        $table.find('th[data-sort]').css('cursor', 'pointer').click(function () {
+            var sort = $(this).data('sort');
+            state.order = (state.sort === sort && state.order === 'desc') ? 'asc' : 'desc';
+            state.sort = sort;
+            state.offset = 0;
+            load();
+        });
+        $body.on('click', '.publication-job-details', function () {
+            showDetails($(this).data('job'));
+        });
+        $body.on('submit', '.publication-job-cancel', function () {
+            var form = this;
+            bootbox.confirm(labels.cancelConfirm, function (confirmed) {
+                if (confirmed) {
+                    form.submit();
+                }
+            });
+            return false;
+        });
+        $(options.filter).submit(function () {
+            state.path = $(this).find('[name="path"]').val();
+            state.status = $(this).find('[name="status"]').val();
+            state.offset = 0;
+            load();
+            return false;
+        });
+        $pager.find('.publication-jobs-previous').click(function () {
+            state.offset = Math.max(0, state.offset - state.limit);
+            load();
+        });
+        $pager.find('.publication-jobs-next').click(function () {
+            state.offset += state.limit;
+            load();
+        });
+
+        load();
+    }
+
+    return {init: init};
+})(jQuery);
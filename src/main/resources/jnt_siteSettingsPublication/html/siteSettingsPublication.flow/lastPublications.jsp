@@ -1,5 +1,3 @@
-<%@ page import="java.util.Map"%>
-<%@ page import="java.util.Date"%>
 <%@ taglib prefix="jcr" uri="http://www.jahia.org/tags/jcr"%>
 <%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
 <%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core"%>
@@ -22,48 +20,67 @@
 <%--@elvariable id="workspace" type="java.lang.String"--%>
 
 <template:addResources type="javascript"
-    resources="jquery.min.js,jquery-ui.min.js,admin-bootstrap.js,jquery.tablesorter.js,jquery.blockUI.js,workInProgress.js,bootbox.min.js" />
+    resources="jquery.min.js,jquery-ui.min.js,admin-bootstrap.js,jquery.blockUI.js,workInProgress.js,bootbox.min.js,sitePublicationJobs.js" />
 <template:addResources type="css" resources="admin-bootstrap.css" />
 <template:addResources type="css"
     resources="jquery-ui.smoothness.css,jquery-ui.smoothness-jahia.css,tablecloth.css" />
 
-<spring:eval var="SUCCESS"
-    expression="T(org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob).SUCCESS" />
-<spring:eval var="ERROR"
-    expression="T(org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob).ERROR" />
-<spring:eval var="NOTHING_TO_PUBLISH"
-    expression="T(org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob).NOTHING_TO_PUBLISH" />
-<spring:eval var="STATUS_ADDED"
-    expression="T(org.jahia.services.scheduler.BackgroundJob).STATUS_ADDED" />
-<spring:eval var="STATUS_SCHEDULED"
-    expression="T(org.jahia.services.scheduler.BackgroundJob).STATUS_SCHEDULED" />
-<spring:eval var="STATUS_EXECUTING"
-    expression="T(org.jahia.services.scheduler.BackgroundJob).STATUS_EXECUTING" />
-<spring:eval var="STATUS_CANCELED"
-    expression="T(org.jahia.services.scheduler.BackgroundJob).STATUS_CANCELED" />
-
-<h2>
-    <fmt:message key="siteSettingsPublication.publicationJobs.title" />
-</h2>
-
-<c:set var="totalCount" value="${fn:length(publicationJobs)}" />
+<fmt:message var="i18nFilterPath" key="siteSettingsPublication.publicationJobs.filter.path"/>
+<fmt:message var="i18nNoItemFound" key="siteSettingsPublication.publicationJobs.noItemFound"/>
+<fmt:message var="i18nLoadError" key="siteSettingsPublication.publicationJobs.loadError"/>
+<fmt:message var="i18nRange" key="siteSettingsPublication.publicationJobs.range"/>
+<fmt:message var="i18nShowDetails" key="siteSettingsPublication.publicationJobs.showDetails"/>
+<fmt:message var="i18nResume" key="siteSettingsPublication.publicationJobs.resume"/>
+<fmt:message var="i18nCancel" key="siteSettingsPublication.publicationJobs.cancel"/>
+<fmt:message var="i18nCancelConfirm" key="siteSettingsPublication.publicationJobs.cancel.confirm"/>
+<fmt:message var="i18nDetails" key="siteSettingsPublication.publicationJobs.details"/>
+<fmt:message var="i18nPublicationPath" key="siteSettingsPublication.publicationJobs.publicationPath"/>
+<fmt:message var="i18nLanguage" key="siteSettingsPublication.publicationJobs.language"/>
+<fmt:message var="i18nStartDate" key="siteSettingsPublication.publicationJobs.startDate"/>
+<fmt:message var="i18nConflicts" key="siteSettingsPublication.publicationJobs.conflicts"/>
+<fmt:message var="i18nMissingProperties" key="siteSettingsPublication.publicationJobs.missingProperty"/>
+<fmt:message var="i18nClose" key="siteSettingsPublication.publicationJobs.close"/>
+<fmt:message var="i18nMore" key="siteSettingsPublication.publicationJobs.more"/>
+<c:url var="publicationJobsUrl" value="${url.base}${renderContext.site.path}.sitePublicationJobs.do"/>
+<c:url var="publicationJobsProgressUrl" value="${url.base}${renderContext.site.path}.sitePublicationJobsProgress.do"/>
 
 <template:addResources type="inlinejavascript">
     <script type="text/javascript">
-        <c:if test="${totalCount > 0}">
-
-            $(document).ready(function () {
-                $("#tablePublicationJobs").tablesorter({
-                    sortList: [[0, 1]],
-                    headers: {5: {sorter: false}}
-                });
+        $(document).ready(function () {
+            sitePublicationJobs.init({
+                url: '${functions:escapeJavaScript(publicationJobsUrl)}',
+                progressUrl: '${functions:escapeJavaScript(publicationJobsProgressUrl)}',
+                flowExecutionUrl: '${functions:escapeJavaScript(flowExecutionUrl)}',
+                table: '#tablePublicationJobs',
+                pager: '#publicationJobsPager',
+                filter: '#formPublicationJobsFilter',
+                buttonClass: 'btn',
+                labels: {
+                    noItemFound: '${functions:escapeJavaScript(i18nNoItemFound)}',
+                    loadError: '${functions:escapeJavaScript(i18nLoadError)}',
+                    range: '${functions:escapeJavaScript(i18nRange)}',
+                    showDetails: '${functions:escapeJavaScript(i18nShowDetails)}',
+                    resume: '${functions:escapeJavaScript(i18nResume)}',
+                    cancel: '${functions:escapeJavaScript(i18nCancel)}',
+                    cancelConfirm: '${functions:escapeJavaScript(i18nCancelConfirm)}',
+                    details: '${functions:escapeJavaScript(i18nDetails)}',
+                    publicationPath: '${functions:escapeJavaScript(i18nPublicationPath)}',
+                    language: '${functions:escapeJavaScript(i18nLanguage)}',
+                    startDate: '${functions:escapeJavaScript(i18nStartDate)}',
+                    conflicts: '${functions:escapeJavaScript(i18nConflicts)}',
+                    missingProperties: '${functions:escapeJavaScript(i18nMissingProperties)}',
+                    close: '${functions:escapeJavaScript(i18nClose)}',
+                    more: '${functions:escapeJavaScript(i18nMore)}'
+                }
             });
-
-        </c:if>
-
+        });
     </script>
 </template:addResources>
 
+<h2>
+    <fmt:message key="siteSettingsPublication.publicationJobs.title" />
+</h2>
+
 <div>
     <div>
         <form action="${flowExecutionUrl}" method="post"
@@ -77,186 +94,61 @@
         </form>
     </div>
 
+    <c:if test="${not empty flowRequestContext.messageContext.allMessages}">
+        <div>
+            <c:forEach items="${flowRequestContext.messageContext.allMessages}" var="message">
+                <c:if test="${message.severity eq 'INFO'}">
+                    <div class="alert alert-success">
+                        <button type="button" class="close" data-dismiss="alert">&times;</button>
+                            ${fn:escapeXml(message.text)}
+                    </div>
+                </c:if>
+                <c:if test="${message.severity eq 'ERROR'}">
+                    <div class="alert alert-error">
+                        <button type="button" class="close" data-dismiss="alert">&times;</button>
+                            ${fn:escapeXml(message.text)}
+                    </div>
+                </c:if>
+            </c:forEach>
+        </div>
+    </c:if>
+
+    <form class="form-inline" id="formPublicationJobsFilter" style="margin-top: 10px;">
+        <input type="text" name="path" class="input-large" placeholder="${fn:escapeXml(i18nFilterPath)}"/>
+        <select name="status" class="input-medium">
+            <option value=""><fmt:message key="siteSettingsPublication.publicationJobs.filter.allStatuses"/></option>
+            <option value="success"><fmt:message key="siteSettingsPublication.publicationJobs.success"/></option>
+            <option value="error"><fmt:message key="siteSettingsPublication.publicationJobs.error"/></option>
+            <option value="partial"><fmt:message key="siteSettingsPublication.publicationJobs.partial"/></option>
+            <option value="nothingToPublish"><fmt:message key="siteSettingsPublication.publicationJobs.nothingToPublish"/></option>
+            <option value="unexpectedFailure"><fmt:message key="siteSettingsPublication.publicationJobs.unexpectedFailure"/></option>
+            <option value="cancelled"><fmt:message key="siteSettingsPublication.publicationJobs.cancelled"/></option>
+            <option value="executing"><fmt:message key="siteSettingsPublication.publicationJobs.executing"/></option>
+            <option value="scheduled"><fmt:message key="siteSettingsPublication.publicationJobs.scheduled"/></option>
+        </select>
+        <button class="btn" type="submit"><fmt:message key="siteSettingsPublication.publicationJobs.filter"/></button>
+    </form>
+
     <div>
         <table class="table table-bordered table-striped table-hover"
             id="tablePublicationJobs">
             <thead>
                 <tr>
-                    <th data-sorter="shortDate"
-                        data-date-format="mmddyyyy"><fmt:message
-                            key="siteSettingsPublication.publicationJobs.startDate" />
-                    </th>
-                    <th data-sorter="shortDate"
-                        data-date-format="mmddyyyy"><fmt:message
-                            key="siteSettingsPublication.publicationJobs.endDate" />
-                    </th>
-                    <th><fmt:message
-                            key="siteSettingsPublication.publicationJobs.path" />
-                    </th>
-                    <th><fmt:message
-                            key="siteSettingsPublication.publicationJobs.language" />
-                    </th>
-                    <th><fmt:message
-                            key="siteSettingsPublication.publicationJobs.status" />
-                    </th>
-                    <th><fmt:message
-                            key="siteSettingsPublication.publicationJobs.details" />
-                    </th>
+                    <th data-sort="begin"><fmt:message key="siteSettingsPublication.publicationJobs.startDate"/></th>
+                    <th data-sort="end"><fmt:message key="siteSettingsPublication.publicationJobs.endDate"/></th>
+                    <th data-sort="path"><fmt:message key="siteSettingsPublication.publicationJobs.path"/></th>
+                    <th data-sort="language"><fmt:message key="siteSettingsPublication.publicationJobs.language"/></th>
+                    <th data-sort="status"><fmt:message key="siteSettingsPublication.publicationJobs.status"/></th>
+                    <th><fmt:message key="siteSettingsPublication.publicationJobs.details"/></th>
                 </tr>
             </thead>
             <tbody>
-                <c:choose>
-                    <c:when test="${totalCount > 0}">
-                        <c:set var="count" value="0" />
-                        <c:forEach items="${publicationJobs}"
-                            var="publicationJob">
-                            <c:set var="jobDetail"
-                                value="${publicationJob.jobDataMap}" />
-                            <jsp:useBean id="dateValue"
-                                class="java.util.Date" />
-                            <jsp:setProperty name="dateValue"
-                                property="time"
-                                value="${jobDetail['begin']}" />
-                            <fmt:formatDate value="${dateValue}"
-                                pattern="MM/dd/yyyy HH:mm:ss"
-                                var="beginDate" />
-                            <tr>
-                                <td>
-                                    <c:if test="${not empty jobDetail['begin']}">
-                                       ${beginDate}
-                                    </c:if>
-                                </td>
-                                <jsp:setProperty name="dateValue"
-                                    property="time"
-                                    value="${jobDetail['end']}" />
-                                <td><c:if
-                                        test="${not empty jobDetail['end']}">
-                                        <fmt:formatDate
-                                            value="${dateValue}"
-                                            pattern="MM/dd/yyyy HH:mm:ss" />
-                                    </c:if></td>
-                                <td>${jobDetail['path']}</td>
-                                <td>${jobDetail['language']}</td>
-                                <td><c:choose>
-                                        <c:when
-                                            test="${jobDetail['result'] == null}">
-                                            <fmt:message
-                                                key="siteSettingsPublication.publicationJobs.${jobDetail['status']}" />
-                                        </c:when>
-                                        <c:otherwise>
-                                            <fmt:message
-                                                key="siteSettingsPublication.publicationJobs.${jobDetail['result']}" />
-                                        </c:otherwise>
-                                    </c:choose></td>
-                                <td><c:choose>
-                                        <c:when
-                                            test="${jobDetail['result'] == null}">
-                                            <fmt:message
-                                                key="siteSettingsPublication.publicationJobs.details.${jobDetail['status']}" />
-                                        </c:when>
-                                        <c:when
-                                            test="${jobDetail['result'] == ERROR}">
-                                            <div id="detail${count}"
-                                                class="modal hide fade">
-                                                <div
-                                                    class="modal-header">
-                                                    <button
-                                                        type="button"
-                                                        class="close"
-                                                        data-dismiss="modal"
-                                                        aria-hidden="true">
-                                                        &times;</button>
-                                                    <h3>
-                                                        <fmt:message
-                                                            key="siteSettingsPublication.publicationJobs.details" />
-                                                    </h3>
-                                                </div>
-                                                <div class="modal-body">
-                                                    <p>
-                                                        <fmt:message
-                                                            key="siteSettingsPublication.publicationJobs.publicationPath">
-                                                            <fmt:param
-                                                                value="<strong>${jobDetail['path']}</strong>" />
-                                                        </fmt:message>
-                                                    </p>
-                                                    <p>
-                                                        <fmt:message
-                                                            key="siteSettingsPublication.publicationJobs.language" />
-                                                        : <strong>${jobDetail['language']}</strong>
-                                                    </p>
-                                                    <p>
-                                                        <fmt:message
-                                                            key="siteSettingsPublication.publicationJobs.startDate" />
-                                                        : <strong>${beginDate}</strong>
-                                                    </p>
-                                                    <c:if
-                                                        test="${fn:length(jobDetail['conflict']) > 0}">
-                                                        <p>
-                                                            <fmt:message
-                                                                key="siteSettingsPublication.publicationJobs.conflicts" />
-                                                        <ul>
-                                                            <c:forEach
-                                                                items="${jobDetail['conflict']}"
-                                                                var="item">
-                                                                <li>${item}</li>
-                                                            </c:forEach>
-                                                        </ul>
-                                                        </p>
-                                                    </c:if>
-                                                    <c:if
-                                                        test="${fn:length(jobDetail['missingProperty']) > 0}">
-                                                        <p>
-                                                            <fmt:message
-                                                                key="siteSettingsPublication.publicationJobs.missingProperty" />
-                                                        <ul>
-                                                            <c:forEach
-                                                                items="${jobDetail['missingProperty']}"
-                                                                var="item">
-                                                                <li>${item}</li>
-                                                            </c:forEach>
-                                                        </ul>
-                                                        </p>
-                                                    </c:if>
-                                                </div>
-                                                <div
-                                                    class="modal-footer">
-                                                    <a href="#"
-                                                        class="btn"
-                                                        data-dismiss="modal">
-                                                        <fmt:message
-                                                            key="siteSettingsPublication.publicationJobs.close" />
-                                                    </a>
-                                                </div>
-                                            </div>
-                                            <a href="#detail${count}"
-                                                role="button"
-                                                class="btn"
-                                                data-toggle="modal">
-                                                <fmt:message
-                                                    key="siteSettingsPublication.publicationJobs.showDetails" />
-                                            </a>
-                                            <c:set var="count"
-                                                value="${count + 1}" />
-                                        </c:when>
-                                        <c:when
-                                            test="${jobDetail['result'] == NOTHING_TO_PUBLISH}">
-                                            <fmt:message
-                                                key="siteSettingsPublication.publicationJobs.contentPublished" />
-                                        </c:when>
-                                    </c:choose></td>
-                            </tr>
-                        </c:forEach>
-                    </c:when>
-                    <c:otherwise>
-                        <tr>
-                            <td colspan="6"><fmt:message
-                                    key="siteSettingsPublication.publicationJobs.noItemFound" />
-                            </td>
-                        </tr>
-                    </c:otherwise>
-                </c:choose>
             </tbody>
         </table>
+        <div id="publicationJobsPager">
+            <button class="btn publication-jobs-previous" type="button" disabled="disabled"><fmt:message key="siteSettingsPublication.publicationJobs.previous"/></button>
+            <button class="btn publication-jobs-next" type="button" disabled="disabled"><fmt:message key="siteSettingsPublication.publicationJobs.next"/></button>
+            &nbsp;<span class="publication-jobs-range"></span>
+        </div>
     </div>
 </div>
-
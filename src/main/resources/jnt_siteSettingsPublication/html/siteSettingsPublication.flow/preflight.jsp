@@ -0,0 +1,140 @@
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core"%>
+<%@ taglib prefix="template" uri="http://www.jahia.org/tags/templateLib"%>
+<%@ taglib prefix="functions" uri="http://www.jahia.org/tags/functions"%>
+<%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions"%>
+
+<%--@elvariable id="flowRequestContext" type="org.springframework.webflow.execution.RequestContext"--%>
+<%--@elvariable id="renderContext" type="org.jahia.services.render.RenderContext"--%>
+<%--@elvariable id="sitePublication" type="org.jahia.modules.sitesettings.publication.webflow.SitePublication"--%>
+<%--@elvariable id="publicationPreflights" type="java.util.List<org.jahia.modules.sitesettings.publication.webflow.PublicationPreflight>"--%>
+<%--@elvariable id="publicationEstimates" type="java.util.List<org.jahia.modules.sitesettings.publication.webflow.PublicationEstimate>"--%>
+
+<template:addResources type="javascript"
+    resources="jquery.min.js,jquery-ui.min.js,admin-bootstrap.js,jquery.blockUI.js,workInProgress.js" />
+<template:addResources type="css" resources="admin-bootstrap.css" />
+<template:addResources type="css"
+    resources="jquery-ui.smoothness.css,jquery-ui.smoothness-jahia.css,tablecloth.css" />
+
+<fmt:message var="i18nWaiting" key="label.workInProgressTitle"/>
+
+<h2>
+    <fmt:message key="siteSettingsPublication.preflight.title" />
+</h2>
+
+<div>
+    <div>
+        <c:choose>
+            <c:when test="${sitePublication.scope == 'SITE_SUBNODES'}">
+                <p><fmt:message key="siteSettingsPublication.scope.nodes"/>:</p>
+                <pre>${fn:escapeXml(sitePublication.nodePaths)}</pre>
+            </c:when>
+            <c:otherwise>
+                <p>
+                    <fmt:message key="siteSettingsPublication.publicationJobs.publicationPath">
+                        <fmt:param value="<strong>${fn:escapeXml(sitePublication.scope == 'ENTIRE_SITE' ? sitePublication.currentSiteName : sitePublication.nodePath)}</strong>"/>
+                    </fmt:message>
+                </p>
+            </c:otherwise>
+        </c:choose>
+        <c:choose>
+            <c:when test="${empty publicationPreflights}">
+                <table class="table table-bordered table-striped table-hover" id="tablePublicationEstimate">
+                    <thead>
+                        <tr>
+                            <th><fmt:message key="siteSettingsPublication.publicationJobs.language"/></th>
+                            <th><fmt:message key="siteSettingsPublication.estimate.nodes"/></th>
+                            <th><fmt:message key="siteSettingsPublication.estimate.conflicts"/></th>
+                            <th><fmt:message key="siteSettingsPublication.estimate.duration"/></th>
+                        </tr>
+                    </thead>
+                    <tbody>
+                        <c:forEach items="${publicationEstimates}" var="estimate">
+                            <tr>
+                                <td>${fn:escapeXml(estimate.language)}</td>
+                                <td>
+                                    <c:choose>
+                                        <c:when test="${estimate.nodeCountLowerBound}">
+                                            <fmt:message key="siteSettingsPublication.estimate.nodes.lowerBound"><fmt:param value="${estimate.nodeCount}"/></fmt:message>
+                                        </c:when>
+                                        <c:otherwise>${estimate.nodeCount}</c:otherwise>
+                                    </c:choose>
+                                </td>
+                                <td>${estimate.conflictCount}</td>
+                                <td>
+                                    <c:choose>
+                                        <c:when test="${not empty estimate.formattedDuration}">${estimate.formattedDuration}</c:when>
+                                        <c:otherwise><fmt:message key="siteSettingsPublication.estimate.duration.unknown"/></c:otherwise>
+                                    </c:choose>
+                                </td>
+                            </tr>
+                        </c:forEach>
+                    </tbody>
+                </table>
+                <p><fmt:message key="siteSettingsPublication.estimate.hint"/></p>
+            </c:when>
+            <c:otherwise>
+            <table class="table table-bordered table-striped table-hover" id="tablePublicationPreflight">
+                <thead>
+                    <tr>
+                        <th><fmt:message key="siteSettingsPublication.publicationJobs.language"/></th>
+                        <th><fmt:message key="siteSettingsPublication.preflight.analysedNodes"/></th>
+                        <th><fmt:message key="siteSettingsPublication.preflight.publishableNodes"/></th>
+                        <th><fmt:message key="siteSettingsPublication.publicationJobs.details"/></th>
+                    </tr>
+                </thead>
+                <tbody>
+                    <c:forEach items="${publicationPreflights}" var="preflight">
+                        <tr>
+                            <td>${fn:escapeXml(preflight.language)}</td>
+                            <td>${preflight.analysedCount}</td>
+                            <td>${preflight.publishableCount}</td>
+                            <td>
+                                <c:choose>
+                                    <c:when test="${preflight.blocked}">
+                                        <c:if test="${not empty preflight.conflicts}">
+                                            <fmt:message key="siteSettingsPublication.publicationJobs.conflicts"/>
+                                            <ul>
+                                                <c:forEach items="${preflight.conflicts}" var="item">
+                                                    <li>${fn:escapeXml(item)}</li>
+                                                </c:forEach>
+                                            </ul>
+                                        </c:if>
+                                        <c:if test="${not empty preflight.missingProperties}">
+                                            <fmt:message key="siteSettingsPublication.publicationJobs.missingProperty"/>
+                                            <ul>
+                                                <c:forEach items="${preflight.missingProperties}" var="item">
+                                                    <li>${fn:escapeXml(item)}</li>
+                                                </c:forEach>
+                                            </ul>
+                                        </c:if>
+                                    </c:when>
+                                    <c:when test="${preflight.publishableCount == 0}">
+                                        <fmt:message key="siteSettingsPublication.publicationJobs.contentPublished"/>
+                                    </c:when>
+                                    <c:otherwise>
+                                        <fmt:message key="siteSettingsPublication.preflight.ready"/>
+                                    </c:otherwise>
+                                </c:choose>
+                            </td>
+                        </tr>
+                    </c:forEach>
+                </tbody>
+            </table>
+            </c:otherwise>
+        </c:choose>
+        <form action="${flowExecutionUrl}" method="post" style="display: inline;">
+            <button class="btn" type="submit" name="_eventId_back">
+                <i class="icon-arrow-left"></i> &nbsp;<fmt:message key="siteSettingsPublication.publicationJobs.back"/>
+            </button>
+            <c:if test="${empty publicationPreflights}">
+                <button class="btn" type="submit" name="_eventId_analyse" onclick="workInProgress('${functions:escapeJavaScript(i18nWaiting)}');">
+                    <i class="icon-search"></i> &nbsp;<fmt:message key="siteSettingsPublication.estimate.analyse"/>
+                </button>
+            </c:if>
+            <button class="btn btn-primary" type="submit" name="_eventId_publish" onclick="workInProgress('${functions:escapeJavaScript(i18nWaiting)}');">
+                <i class="icon-ok-sign icon-white"></i> &nbsp;<fmt:message key="label.publish"/>
+            </button>
+        </form>
+    </div>
+</div>
@@ -0,0 +1,60 @@
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core"%>
+<%@ taglib prefix="template" uri="http://www.jahia.org/tags/templateLib"%>
+<%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions"%>
+
+<%--@elvariable id="flowRequestContext" type="org.springframework.webflow.execution.RequestContext"--%>
+<%--@elvariable id="siteSettings" type="org.jahia.modules.sitesettings.publication.webflow.SitePublicationSettings"--%>
+
+<template:addResources type="javascript" resources="jquery.min.js,admin-bootstrap.js"/>
+<template:addResources type="css" resources="admin-bootstrap.css"/>
+
+<h2>
+    <fmt:message key="siteSettingsPublication.siteSettings.title"/>
+</h2>
+
+<div>
+    <c:forEach items="${flowRequestContext.messageContext.allMessages}" var="message">
+        <c:if test="${message.severity eq 'ERROR'}">
+            <div class="alert alert-error">
+                <button type="button" class="close" data-dismiss="alert">&times;</button>
+                    ${fn:escapeXml(message.text)}
+            </div>
+        </c:if>
+    </c:forEach>
+    <div class="box-1">
+        <form action="${flowExecutionUrl}" method="post" id="formSitePublicationSettings">
+            <fieldset>
+                <div class="container-fluid">
+                    <p><fmt:message key="siteSettingsPublication.siteSettings.hint"/></p>
+                    <div class="row-fluid">
+                        <div class="span6">
+                            <label for="threads"><fmt:message key="siteSettingsPublication.siteSettings.threads"/></label>
+                            <input type="number" min="1" name="threads" class="span4" id="threads" value="${fn:escapeXml(siteSettings.threads)}"/>
+                            <label for="maxNodesPerSecond"><fmt:message key="siteSettingsPublication.siteSettings.maxNodesPerSecond"/></label>
+                            <input type="number" min="1" name="maxNodesPerSecond" class="span4" id="maxNodesPerSecond" value="${fn:escapeXml(siteSettings.maxNodesPerSecond)}"/>
+                            <label for="latencyThreshold"><fmt:message key="siteSettingsPublication.siteSettings.latencyThreshold"/></label>
+                            <input type="number" min="1" name="latencyThreshold" class="span4" id="latencyThreshold" value="${fn:escapeXml(siteSettings.latencyThreshold)}"/>
+                            <label for="offPeakCron"><fmt:message key="siteSettingsPublication.siteSettings.offPeakCron"/></label>
+                            <input type="text" name="offPeakCron" class="span8" id="offPeakCron" value="${fn:escapeXml(siteSettings.offPeakCron)}" placeholder="0 0 22 * * ?"/>
+                        </div>
+                    </div>
+                </div>
+            </fieldset>
+            <fieldset>
+                <div class="container-fluid">
+                    <div class="row-fluid">
+                        <div class="span12">
+                            <button class="btn" type="submit" name="_eventId_back">
+                                <i class="icon-arrow-left"></i> &nbsp;<fmt:message key="siteSettingsPublication.publicationJobs.back"/>
+                            </button>
+                            <button class="btn btn-primary" type="submit" name="_eventId_save">
+                                <i class="icon-ok-sign icon-white"></i> &nbsp;<fmt:message key="label.save"/>
+                            </button>
+                        </div>
+                    </div>
+                </div>
+            </fieldset>
+        </form>
+    </div>
+</div>
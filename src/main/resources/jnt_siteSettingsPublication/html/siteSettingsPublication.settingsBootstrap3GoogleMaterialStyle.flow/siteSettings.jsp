@@ -0,0 +1,55 @@
+<%@ taglib prefix="fmt" uri="http://java.sun.com/jsp/jstl/fmt"%>
+<%@ taglib prefix="c" uri="http://java.sun.com/jsp/jstl/core"%>
+<%@ taglib prefix="template" uri="http://www.jahia.org/tags/templateLib"%>
+<%@ taglib prefix="fn" uri="http://java.sun.com/jsp/jstl/functions"%>
+
+<%--@elvariable id="flowRequestContext" type="org.springframework.webflow.execution.RequestContext"--%>
+<%--@elvariable id="siteSettings" type="org.jahia.modules.sitesettings.publication.webflow.SitePublicationSettings"--%>
+
+<template:addResources type="javascript" resources="jquery.min.js"/>
+
+<div class="page-header">
+    <h2><fmt:message key="siteSettingsPublication.siteSettings.title"/></h2>
+</div>
+
+<div class="panel panel-default">
+    <div class="panel-body">
+        <c:forEach items="${flowRequestContext.messageContext.allMessages}" var="message">
+            <c:if test="${message.severity eq 'ERROR'}">
+                <div class="alert alert-danger">
+                    <button type="button" class="close" data-dismiss="alert">&times;</button>
+                        ${fn:escapeXml(message.text)}
+                </div>
+            </c:if>
+        </c:forEach>
+        <form action="${flowExecutionUrl}" method="post" id="formSitePublicationSettings">
+            <p><fmt:message key="siteSettingsPublication.siteSettings.hint"/></p>
+            <div class="row">
+                <div class="col-md-6">
+                    <div class="form-group">
+                        <label for="threads"><fmt:message key="siteSettingsPublication.siteSettings.threads"/></label>
+                        <input type="number" min="1" name="threads" class="form-control" id="threads" value="${fn:escapeXml(siteSettings.threads)}"/>
+                    </div>
+                    <div class="form-group">
+                        <label for="maxNodesPerSecond"><fmt:message key="siteSettingsPublication.siteSettings.maxNodesPerSecond"/></label>
+                        <input type="number" min="1" name="maxNodesPerSecond" class="form-control" id="maxNodesPerSecond" value="${fn:escapeXml(siteSettings.maxNodesPerSecond)}"/>
+                    </div>
+                    <div class="form-group">
+                        <label for="latencyThreshold"><fmt:message key="siteSettingsPublication.siteSettings.latencyThreshold"/></label>
+                        <input type="number" min="1" name="latencyThreshold" class="form-control" id="latencyThreshold" value="${fn:escapeXml(siteSettings.latencyThreshold)}"/>
+                    </div>
+                    <div class="form-group">
+                        <label for="offPeakCron"><fmt:message key="siteSettingsPublication.siteSettings.offPeakCron"/></label>
+                        <input type="text" name="offPeakCron" class="form-control" id="offPeakCron" value="${fn:escapeXml(siteSettings.offPeakCron)}" placeholder="0 0 22 * * ?"/>
+                    </div>
+                </div>
+            </div>
+            <button class="btn btn-default" type="submit" name="_eventId_back">
+                <i class="icon-arrow-left"></i> &nbsp;<fmt:message key="siteSettingsPublication.publicationJobs.back"/>
+            </button>
+            <button class="btn btn-primary" type="submit" name="_eventId_save">
+                <i class="icon-ok-sign icon-white"></i> &nbsp;<fmt:message key="label.save"/>
+            </button>
+        </form>
+    </div>
+</div>
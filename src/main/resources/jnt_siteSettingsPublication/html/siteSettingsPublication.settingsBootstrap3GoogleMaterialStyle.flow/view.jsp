@@ -30,9 +30,11 @@
     <fmt:param value="${sitePublication.currentSiteKey}"/>
 </fmt:message>
 <fmt:message var="i18nConfirmNode" key="siteSettingsPublication.confirm.node"/>
+<fmt:message var="i18nConfirmNodes" key="siteSettingsPublication.confirm.nodes"/>
 <fmt:message var="i18nConfirmBackground" key="siteSettingsPublication.confirm.background"/>
 <spring:eval var="ENTIRE_SITE" expression="T(org.jahia.modules.sitesettings.publication.webflow.SitePublication$Scope).ENTIRE_SITE"/>
 <spring:eval var="SITE_SUBNODE" expression="T(org.jahia.modules.sitesettings.publication.webflow.SitePublication$Scope).SITE_SUBNODE"/>
+<spring:eval var="SITE_SUBNODES" expression="T(org.jahia.modules.sitesettings.publication.webflow.SitePublication$Scope).SITE_SUBNODES"/>
 
 <template:addResources>
     <script type="text/javascript">
@@ -40,11 +42,13 @@
         function sitePublicationSubmitForm(actionType) {
             workInProgress('${functions:escapeJavaScript(i18nWaiting)}');
             $('#sitePubAction').val(actionType);
+            <%-- the publication time is entered in the local time of the browser, the offset being the one at that time --%>
+            var scheduledTime = new Date($('#scheduledTime').val());
+            $('#timeZoneOffset').val((isNaN(scheduledTime.getTime()) ? new Date() : scheduledTime).getTimezoneOffset());
             $('#formSitePublication').submit();
         }
 
-        function sitePublicationConfirm() {
-            var path = $('#nodePath').val().trim();
+        function sitePublicationCheckPath(path) {
             if ($('#scopeNode').is(':checked')) { <%-- verify the provided node path --%>
                 if (path != '${currentSitePath}' && path.match('^${currentSitePath}/') == null) {
                     bootbox.alert({
@@ -54,7 +58,33 @@
                     return false;
                 }
             }
-            var msgConfirm = $('#scopeSite').is(':checked') ? '${functions:escapeJavaScript(i18nConfirmSite)}' : '${functions:escapeJavaScript(i18nConfirmNode)}'.replace('{0}', path);
+            return true;
+        }
+
+        function sitePublicationPreflight() {
+            if (!sitePublicationCheckPath($('#nodePath').val().trim())) {
+                return false;
+            }
+            sitePublicationSubmitForm('preflight');
+            return true;
+        }
+
+        function sitePublicationConfirm() {
+            var path = $('#nodePath').val().trim();
+            if (!sitePublicationCheckPath(path)) {
+                return false;
+            }
+            var msgConfirm;
+            if ($('#scopeSite').is(':checked')) {
+                msgConfirm = '${functions:escapeJavaScript(i18nConfirmSite)}';
+            } else if ($('#scopeNodes').is(':checked')) {
+                var count = $.grep($('#nodePaths').val().split(/[\r\n]+/), function(line) {
+                    return line.trim().length > 0 && line.trim().charAt(0) != '#';
+                }).length;
+                msgConfirm = '${functions:escapeJavaScript(i18nConfirmNodes)}'.replace('{0}', count);
+            } else {
+                msgConfirm = '${functions:escapeJavaScript(i18nConfirmNode)}'.replace('{0}', path);
+            }
             msgConfirm = msgConfirm + '<br/><ul>';
             $('input[name="languages"]:checked').each(function() {
                 msgConfirm = msgConfirm + '<li>' + $(this).attr('title') + '</li>';
@@ -99,22 +129,38 @@
                 }
                 checkPublishButtonStatus();
             });
-            $('input[name="scope"]').change(function() { <%-- when scope is changed we either enable or disable the node path input field  --%>
+            $('input[name="scope"]').change(function() { <%-- when scope is changed we either enable or disable the node path input fields  --%>
                 $('#nodePath').prop('disabled', $('#scopeNode').is(':checked') == false);
+                $('#nodePaths, #nodePathsFile').prop('disabled', $('#scopeNodes').is(':checked') == false);
                 checkPublishButtonStatus();
             });
+            $('input[name="timing"]').change(function() { <%-- the publication time is only needed when publishing at a given time --%>
+                $('#scheduledTime').prop('disabled', $('#timingAt').is(':checked') == false);
+            });
             $('#nodePath').click(function() {
                 $(this).select();
             });
+            $('#nodePathsFile').change(function() { <%-- the paths of a text file are added to the ones already provided --%>
+                var file = this.files && this.files[0];
+                if (file) {
+                    var reader = new FileReader();
+                    reader.onload = function() {
+                        var paths = $('#nodePaths').val().trim();
+                        $('#nodePaths').val((paths.length > 0 ? paths + '\n' : '') + reader.result.trim());
+                    };
+                    reader.readAsText(file);
+                    $(this).val('');
+                }
+            });
 
-            function checkPublishButtonStatus() { <%-- we enable the publish button when a scope and a language (in case of multiple available languages) is selected  --%>
+            function checkPublishButtonStatus() { <%-- we enable the publish and preflight buttons when a scope and a language (in case of multiple available languages) is selected  --%>
                 var ready = false;
-                if ($('#scopeSite').is(':checked') || $('#scopeNode').is(':checked')) {
+                if ($('#scopeSite').is(':checked') || $('#scopeNode').is(':checked') || $('#scopeNodes').is(':checked')) {
                     if ('${multipleSiteLanguages}' == 'false' || $('input[name="languages"]:checked').length > 0) {
                         ready = true;
                     }
                 }
-                $('#btnSitePublicationPublish').prop('disabled', !ready);
+                $('#btnSitePublicationPublish, #btnSitePublicationPreflight').prop('disabled', !ready);
             }
         });
     </script>
@@ -151,6 +197,7 @@
                         <c:set var="mandatoryLabel">&nbsp;<span class="text-danger" title="${i18nMandatory}"><strong>*</strong></span></c:set>
                         <form action="${flowExecutionUrl}" method="post" id="formSitePublication">
                             <input type="hidden" id="sitePubAction" name="_eventId" value="" />
+                            <input type="hidden" id="timeZoneOffset" name="timeZoneOffset" value="" />
                             <fieldset>
                                 <%--<div class="col-md-12">--%>
                                     <div class="row">
@@ -179,11 +226,58 @@
                                                         value="${sitePublication.currentSiteKey}"/></fmt:message>)
                                                 </div>
                                             </div>
+                                            <div class="radio">
+                                                <label class="radio-inline" for="scopeNodes">
+                                                    <input type="radio" id="scopeNodes" name="scope" value="${SITE_SUBNODES}" ${sitePublication.scope == SITE_SUBNODES ? 'checked' : ''}/>&nbsp;
+                                                    <fmt:message key="siteSettingsPublication.scope.nodes"/>:&nbsp;
+                                                </label>
+                                            </div>
+                                            <div class="row">
+                                                <div class="col-sm-7 col-sm-offset-1">
+                                                    <textarea name="nodePaths" class="form-control" rows="6" id="nodePaths" ${sitePublication.scope != SITE_SUBNODES ? 'disabled="disabled"' : ''}>${fn:escapeXml(sitePublication.nodePaths)}</textarea>
+                                                    (<fmt:message key="siteSettingsPublication.scope.nodes.hint"><fmt:param
+                                                        value="${sitePublication.currentSiteKey}"/></fmt:message>)
+                                                    <label for="nodePathsFile"><fmt:message key="siteSettingsPublication.scope.nodes.file"/></label>
+                                                    <input type="file" id="nodePathsFile" accept=".txt,text/plain" ${sitePublication.scope != SITE_SUBNODES ? 'disabled="disabled"' : ''}/>
+                                                </div>
+                                            </div>
                                             <br/>
                                         </div>
                                     </div>
                                 <%--</div>--%>
                             </fieldset>
+                            <fieldset>
+                                <div class="row">
+                                    <div class="col-md-6">
+                                        <h4><fmt:message key="siteSettingsPublication.timing"/></h4>
+                                        <div class="radio">
+                                            <label class="radio-inline" for="timingNow">
+                                                <input type="radio" id="timingNow" name="timing" value="NOW" ${sitePublication.timing == 'NOW' ? 'checked' : ''}/>&nbsp;
+                                                <fmt:message key="siteSettingsPublication.timing.now"/>
+                                            </label>
+                                        </div>
+                                        <div class="radio">
+                                            <label class="radio-inline" for="timingAt">
+                                                <input type="radio" id="timingAt" name="timing" value="AT" ${sitePublication.timing == 'AT' ? 'checked' : ''}/>&nbsp;
+                                                <fmt:message key="siteSettingsPublication.timing.at"/>:&nbsp;
+                                            </label>
+                                        </div>
+                                        <div class="row">
+                                            <div class="col-sm-7 col-sm-offset-1">
+                                                <input type="datetime-local" name="scheduledTime" class="form-control" id="scheduledTime" value="${fn:escapeXml(sitePublication.scheduledTime)}"
+                                                       placeholder="<fmt:message key='siteSettingsPublication.timing.at.hint'/>" ${sitePublication.timing != 'AT' ? 'disabled="disabled"' : ''}/>
+                                            </div>
+                                        </div>
+                                        <div class="radio">
+                                            <label class="radio-inline" for="timingOffPeak">
+                                                <input type="radio" id="timingOffPeak" name="timing" value="OFF_PEAK" ${sitePublication.timing == 'OFF_PEAK' ? 'checked' : ''}/>&nbsp;
+                                                <fmt:message key="siteSettingsPublication.timing.offPeak"/>
+                                            </label>
+                                        </div>
+                                        <br/>
+                                    </div>
+                                </div>
+                            </fieldset>
                             <div class="col-md-6">
                                 <c:if test="${multipleSiteLanguages}">
                                     <fieldset>
@@ -230,6 +324,13 @@
                                     &nbsp;<fmt:message key="siteSettingsPublication.showLastPublications"/>
                                 </button>
                             </form>
+                            <form action="${flowExecutionUrl}" method="post" style="display: inline;">
+                                <input type="hidden" name="_eventId" value="siteSettings"/>
+                                <button class="btn btn-default" type="submit" name="showSiteSettingsButton">
+                                    <i class="icon-wrench"></i>
+                                    &nbsp;<fmt:message key="siteSettingsPublication.siteSettings"/>
+                                </button>
+                            </form>
                         </div>
                     </div>
                 </div>
@@ -240,6 +341,11 @@
                             <i class="icon-ok-sign icon-white"></i>
                             &nbsp;${fn:escapeXml(i18nPublish)}
                         </button>
+                        <button class="btn btn-default pull-left" type="button" id="btnSitePublicationPreflight"
+                                onclick="sitePublicationPreflight(); return false;" ${sitePublication.scope == null || multipleSiteLanguages && empty sitePublication.languages ? 'disabled="disabled"' : ''}>
+                            <i class="icon-search"></i>
+                            &nbsp;<fmt:message key="siteSettingsPublication.preflight"/>
+                        </button>
                     </div>
                 </div>
                 <hr/>
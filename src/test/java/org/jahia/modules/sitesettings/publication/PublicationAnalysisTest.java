@@ -0,0 +1,173 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jahia.services.content.PublicationInfo;
+import org.jahia.services.content.PublicationInfoNode;
+import org.junit.Test;
+
+/**
+ * Tests of the walk of publication info trees by {@link PublicationAnalysis}.
+ */
+public class PublicationAnalysisTest {
+
+    private static PublicationInfoNode node(String uuid, String path, int status, PublicationInfoNode... children) {
+        PublicationInfoNode node = new PublicationInfoNode(uuid, path);
+        node.setStatus(status);
+        for (PublicationInfoNode child : children) {
+            node.addChild(child);
+        }
+        return node;
+    }
+
+    private static PublicationInfo tree(PublicationInfoNode root) {
+        PublicationInfo publicationInfo = new PublicationInfo();
+        publicationInfo.setRoot(root);
+        return publicationInfo;
+    }
+
+    @Test
+    public void collectsPublishableNodesParentsFirst() {
+        PublicationInfoNode root = node("root", "/sites/a", PublicationInfo.MODIFIED,
+                node("c1", "/sites/a/c1", PublicationInfo.NOT_PUBLISHED, node("c11", "/sites/a/c1/c11", PublicationInfo.MODIFIED)),
+                node("c2", "/sites/a/c2", PublicationInfo.PUBLISHED),
+                node("c3", "/sites/a/c3", PublicationInfo.NOT_PUBLISHED));
+
+        PublicationAnalysis analysis = new PublicationAnalysis().analyse(Collections.singletonList(tree(root)));
+
+        assertTrue(analysis.isPublicationNeeded());
+        assertEquals(5, analysis.getAnalysedCount());
+        assertEquals(Arrays.asList("root", "c1", "c11", "c3"), analysis.getPublishableUuids());
+        assertEquals(Arrays.asList("/sites/a", "/sites/a/c1", "/sites/a/c1/c11", "/sites/a/c3"), analysis.getPublishablePaths());
+        assertTrue(analysis.getNonPublishableNodes().isEmpty());
+    }
+
+    @Test
+    public void visitsSharedReferenceOnce() {
+        PublicationInfoNode shared = node("shared", "/sites/a/files/shared", PublicationInfo.MODIFIED);
+        PublicationInfoNode c1 = node("c1", "/sites/a/c1", PublicationInfo.PUBLISHED);
+        PublicationInfoNode c2 = node("c2", "/sites/a/c2", PublicationInfo.PUBLISHED);
+        c1.addReference(tree(shared));
+        c2.addReference(tree(node("shared", "/sites/a/files/shared", PublicationInfo.MODIFIED)));
+        PublicationInfoNode root = node("root", "/sites/a", PublicationInfo.PUBLISHED, c1, c2);
+
+        PublicationAnalysis analysis = new PublicationAnalysis().analyse(Collections.singletonList(tree(root)));
+
+        assertEquals(4, analysis.getAnalysedCount());
+        assertEquals(Collections.singletonList("shared"), analysis.getPublishableUuids());
+    }
+
+    @Test
+    public void reportsDetachedNonPublishableNodes() {
+        PublicationInfoNode conflict = node("c1", "/sites/a/c1", PublicationInfo.CONFLICT, node("c11", "/sites/a/c1/c11", PublicationInfo.MODIFIED));
+        PublicationInfoNode missing = node("c2", "/sites/a/c2", PublicationInfo.MANDATORY_LANGUAGE_UNPUBLISHABLE);
+        PublicationInfoNode root = node("root", "/sites/a", PublicationInfo.PUBLISHED, conflict, missing);
+
+        List<PublicationInfoNode> nonPublishableNodes = new PublicationAnalysis().analyse(Collections.singletonList(tree(root))).getNonPublishableNodes();
+
+        assertEquals(2, nonPublishableNodes.size());
+        assertEquals("/sites/a/c1", nonPublishableNodes.get(0).getPath());
+        assertEquals(PublicationInfo.CONFLICT, nonPublishableNodes.get(0).getStatus());
+        assertTrue(nonPublishableNodes.get(0).getChildren().isEmpty());
+        assertEquals("/sites/a/c2", nonPublishableNodes.get(1).getPath());
+        assertEquals(PublicationInfo.MANDATORY_LANGUAGE_UNPUBLISHABLE, nonPublishableNodes.get(1).getStatus());
+    }
+
+    @Test
+    public void walksSubNodesOfAlreadyVisitedRoot() {
+        PublicationAnalysis analysis = new PublicationAnalysis();
+        analysis.analyse(Collections.singletonList(tree(node("root", "/sites/a", PublicationInfo.PUBLISHED,
+                node("c1", "/sites/a/c1", PublicationInfo.PUBLISHED)))));
+        assertFalse(analysis.isPublicationNeeded());
+
+        // the sub-tree of c1, analysed afterwards as a part of the tree
+        analysis.analyse(Collections.singletonList(tree(node("c1", "/sites/a/c1", PublicationInfo.PUBLISHED,
+                node("c11", "/sites/a/c1/c11", PublicationInfo.MODIFIED)))));
+
+        assertEquals(3, analysis.getAnalysedCount());
+        assertEquals(Collections.singletonList("c11"), analysis.getPublishableUuids());
+    }
+
+    @Test
+    public void walksSubNodesOfNodeFirstVisitedAsReference() {
+        PublicationAnalysis analysis = new PublicationAnalysis();
+        PublicationInfoNode c1 = node("c1", "/sites/a/c1", PublicationInfo.PUBLISHED);
+        c1.addReference(tree(node("page", "/sites/a/c2/page", PublicationInfo.PUBLISHED)));
+        analysis.analyse(Collections.singletonList(tree(node("root", "/sites/a", PublicationInfo.PUBLISHED, c1))));
+        assertTrue(analysis.isVisited("page"));
+
+        // the referenced page comes back with its sub-page in another sub-tree of the job
+        analysis.analyse(Collections.singletonList(tree(node("c2", "/sites/a/c2", PublicationInfo.PUBLISHED,
+                node("page", "/sites/a/c2/page", PublicationInfo.PUBLISHED, node("sub", "/sites/a/c2/page/sub", PublicationInfo.MODIFIED))))));
+
+        assertEquals(5, analysis.getAnalysedCount());
+        assertEquals(Collections.singletonList("sub"), analysis.getPublishableUuids());
+
+        // its sub-nodes are walked once only
+        analysis.analyse(Collections.singletonList(tree(node("c3", "/sites/a/c3", PublicationInfo.PUBLISHED,
+                node("page", "/sites/a/c2/page", PublicationInfo.PUBLISHED, node("sub", "/sites/a/c2/page/sub", PublicationInfo.MODIFIED))))));
+        assertEquals(6, analysis.getAnalysedCount());
+        assertEquals(Collections.singletonList("sub"), analysis.getPublishableUuids());
+    }
+
+    @Test
+    public void stopsAtFirstUnpublishedNode() {
+        PublicationInfoNode root = node("root", "/sites/a", PublicationInfo.PUBLISHED,
+                node("c1", "/sites/a/c1", PublicationInfo.MODIFIED), node("c2", "/sites/a/c2", PublicationInfo.MODIFIED));
+
+        PublicationAnalysis analysis = new PublicationAnalysis(true).analyse(Collections.singletonList(tree(root)));
+
+        assertTrue(analysis.isPublicationNeeded());
+        assertEquals(2, analysis.getAnalysedCount());
+        assertFalse(PublicationAnalysis.needsPublication(Collections.singletonList(tree(node("root", "/sites/a", PublicationInfo.PUBLISHED)))));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests of the adaptive rate of {@link PublicationThrottle}.
+ */
+public class PublicationThrottleTest {
+
+    @Test
+    public void startsAtMaximumRate() {
+        assertEquals(100, new PublicationThrottle(100, 1000).getRate(), 0);
+    }
+
+    @Test
+    public void halvesRateOnSlowCommit() {
+        PublicationThrottle throttle = new PublicationThrottle(100, 1000);
+        throttle.committed(1001);
+        assertEquals(50, throttle.getRate(), 0);
+        throttle.committed(5000);
+        assertEquals(25, throttle.getRate(), 0);
+    }
+
+    @Test
+    public void neverGoesBelowOneNodePerSecond() {
+        PublicationThrottle throttle = new PublicationThrottle(4, 1000);
+        for (int i = 0; i < 10; i++) {
+            throttle.committed(2000);
+        }
+        assertEquals(1, throttle.getRate(), 0);
+    }
+
+    @Test
+    public void recoversByTenthOfMaximumUpToMaximum() {
+        PublicationThrottle throttle = new PublicationThrottle(100, 1000);
+        throttle.committed(2000);
+        throttle.committed(500);
+        assertEquals(60, throttle.getRate(), 0.001);
+        for (int i = 0; i < 10; i++) {
+            throttle.committed(500);
+        }
+        assertEquals(100, throttle.getRate(), 0);
+    }
+
+    @Test
+    public void keepsFixedRateWithoutThreshold() {
+        PublicationThrottle throttle = new PublicationThrottle(100, 0);
+        throttle.committed(60000);
+        assertEquals(100, throttle.getRate(), 0);
+    }
+
+    @Test
+    public void spacesBatchesAccordingToRate() {
+        PublicationThrottle throttle = new PublicationThrottle(10, 0);
+        assertEquals(0, throttle.reserve(10));
+        long wait = throttle.reserve(5);
+        // the first batch of 10 nodes takes the first second
+        assertTrue("Unexpected wait " + wait, wait > 900 && wait <= 1000);
+        wait = throttle.reserve(1);
+        assertTrue("Unexpected wait " + wait, wait > 1400 && wait <= 1500);
+    }
+}
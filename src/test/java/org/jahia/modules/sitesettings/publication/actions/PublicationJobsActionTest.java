@@ -0,0 +1,116 @@
+/*
+ * ==========================================================================================
+ * =                   JAHIA'S DUAL LICENSING - IMPORTANT INFORMATION                       =
+ * ==========================================================================================
+ *
+ *                                 http://www.jahia.com
+ *
+ *     Copyright (C) 2002-2020 Jahia Solutions Group SA. All rights reserved.
+ *
+ *     THIS FILE IS AVAILABLE UNDER TWO DIFFERENT LICENSES:
+ *     1/GPL OR 2/JSEL
+ *
+ *     1/ GPL
+ *     ==================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE GPL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     This program is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     This program is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with this program. If not, see <http://www.gnu.org/licenses/>.
+ *
+ *
+ *     2/ JSEL - Commercial and Supported Versions of the program
+ *     ===================================================================================
+ *
+ *     IF YOU DECIDE TO CHOOSE THE JSEL LICENSE, YOU MUST COMPLY WITH THE FOLLOWING TERMS:
+ *
+ *     Alternatively, commercial and supported versions of the program - also known as
+ *     Enterprise Distributions - must be used in accordance with the terms and conditions
+ *     contained in a separate written agreement between you and Jahia Solutions Group SA.
+ *
+ *     If you are unsure which license is appropriate for your use,
+ *     please contact the sales department at sales@jahia.com.
+ */
+package org.jahia.modules.sitesettings.publication.actions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jahia.modules.sitesettings.publication.SiteAdminPublicationJob;
+import org.jahia.services.scheduler.BackgroundJob;
+import org.junit.Test;
+import org.quartz.JobDetail;
+
+/**
+ * Tests of the sort and paging of {@link PublicationJobsAction}.
+ */
+public class PublicationJobsActionTest {
+
+    private static JobDetail job(String name, String begin, String path, String status, String result) {
+        JobDetail job = new JobDetail();
+        job.setName(name);
+        if (begin != null) {
+            job.getJobDataMap().put(BackgroundJob.JOB_BEGIN, begin);
+        }
+        job.getJobDataMap().put(SiteAdminPublicationJob.PUBLICATION_JOB_PATH, path);
+        job.getJobDataMap().put(BackgroundJob.JOB_STATUS, status);
+        if (result != null) {
+            job.getJobDataMap().put(SiteAdminPublicationJob.PUBLICATION_JOB_RESULT, result);
+        }
+        return job;
+    }
+
+    private static List<String> names(List<JobDetail> jobs) {
+        List<String> names = new ArrayList<>();
+        for (JobDetail job : jobs) {
+            names.add(job.getName());
+        }
+        return names;
+    }
+
+    private final List<JobDetail> jobs = new ArrayList<>(Arrays.asList(
+            job("a", "1000", "/sites/b", BackgroundJob.STATUS_FAILED, SiteAdminPublicationJob.ERROR),
+            job("b", "30", "/sites/c", BackgroundJob.STATUS_EXECUTING, null),
+            job("c", null, "/sites/a", BackgroundJob.STATUS_SCHEDULED, null)));
+
+    @Test
+    public void sortsTimesNumerically() {
+        Collections.sort(jobs, PublicationJobsAction.getComparator(BackgroundJob.JOB_BEGIN));
+        assertEquals(Arrays.asList("c", "b", "a"), names(jobs));
+    }
+
+    @Test
+    public void sortsStringsAndStatus() {
+        Collections.sort(jobs, PublicationJobsAction.getComparator(SiteAdminPublicationJob.PUBLICATION_JOB_PATH));
+        assertEquals(Arrays.asList("c", "a", "b"), names(jobs));
+
+        // the result of a completed job takes precedence over its status
+        Collections.sort(jobs, Collections.reverseOrder(PublicationJobsAction.getComparator("status")));
+        assertEquals(Arrays.asList("c", "b", "a"), names(jobs));
+    }
+
+    @Test
+    public void returnsRequestedPage() {
+        List<Integer> list = Arrays.asList(0, 1, 2, 3, 4);
+        assertEquals(Arrays.asList(0, 1), PublicationJobsAction.getPage(list, 0, 2));
+        assertEquals(Arrays.asList(4), PublicationJobsAction.getPage(list, 4, 2));
+        assertTrue(PublicationJobsAction.getPage(list, 5, 2).isEmpty());
+        assertTrue(PublicationJobsAction.getPage(list, 100, 2).isEmpty());
+        assertEquals(list, PublicationJobsAction.getPage(list, 0, 100));
+    }
+}